@@ -0,0 +1,63 @@
+package com.seismic.bench
+
+import com.seismic._
+import com.seismic.io.Preferences
+
+/**
+  * A set list shaped like a real one: one song, a phrase with four instruments in each bank and a couple of notes
+  * per instrument, with the same calibration and thresholds the app starts with.
+  */
+object BenchmarkSetList {
+  val handleValues = Array(0, 130, 260, 390, 520, 650, 780, 910, 1023)
+  val triggerValues = Array(120, 300, 450, 610, 700, 820, 900, 1023)
+
+  def preferences = {
+    val preferences = Preferences(".")
+    preferences.handleCalibration.inverted = false
+    preferences
+  }
+
+  def setList(preferences: Preferences) = {
+    val phrase = Phrase("Bench Phrase", 1)
+    phrase.getInstrumentBanks.foreach { bank =>
+      bank.setInstruments(Array(
+        Instrument(Array("C1", "E1/2")),
+        Instrument(Array("NC#1", "F1")),
+        Instrument(Array("XD1", "TD1", "G1/3")),
+        Instrument(Array("36", "38"))))
+    }
+
+    val song = Song("Bench Song", 1)
+    song.setPhrases(Array(phrase))
+
+    val setList = SetList("Bench SetList")
+    setList.songs = Array(song)
+    setList.setPreferences(preferences)
+    setList
+  }
+
+  /**
+    * A big library for load and save benchmarks: songs with several phrases each, every bank filled.
+    */
+  def library(songCount: Int, phrasesPerSong: Int) = {
+    val setList = SetList("Bench Library")
+    setList.songs = (1 to songCount).map { s =>
+      val song = Song(s"Song $s", (s % 16) + 1)
+      song.setPhrases((1 to phrasesPerSong).map { p =>
+        val phrase = Phrase(s"Phrase $p", p)
+        phrase.getInstrumentBanks.foreach { bank =>
+          bank.setInstruments(Array(
+            Instrument(Array("C1", "E1/2")),
+            Instrument(Array("NC#1", "F1")),
+            Instrument(Array("XD1", "TD1", "G1/3")),
+            Instrument(Array(s"${(s + p) % 128}"))))
+          bank.phrase = phrase
+        }
+        phrase
+      }.toArray)
+      song.setList = setList
+      song
+    }.toArray
+    setList
+  }
+}
@@ -0,0 +1,59 @@
+package com.seismic.bench
+
+import java.util.concurrent.TimeUnit
+
+import com.seismic.{HandleCalibration, Instrument, InstrumentBank, InstrumentBanks, Phrase}
+import org.openjdk.jmh.annotations._
+
+/**
+  * The per-hit lookups Seismic.trigger is built from: picking an instrument by handle position, then a velocity.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class InstrumentBenchmark {
+  private var handleCalibration: HandleCalibration = _
+  private var instruments: Array[Instrument] = _
+  private var bank: InstrumentBank = _
+  private var instrument: Instrument = _
+  private var phrase: Phrase = _
+  private var kickBankId = 0
+  private var index = 0
+
+  @Setup
+  def setup(): Unit = {
+    val preferences = BenchmarkSetList.preferences
+    handleCalibration = preferences.handleCalibration
+    phrase = BenchmarkSetList.setList(preferences).songs.head.getPhrases.head
+    bank = phrase.getInstrumentBankNamed("KICK")
+    instruments = bank.getInstruments
+    instrument = instruments.head
+    kickBankId = InstrumentBanks.bankIdForTrigger(0, fingerTrigger = false)
+  }
+
+  @Benchmark
+  def handleCalibrationSelect(): Instrument = {
+    handleCalibration.select(nextHandleValue(), instruments)
+  }
+
+  @Benchmark
+  def bankSelectInstrument(): Instrument = {
+    bank.selectInstrumentForValue(nextHandleValue())
+  }
+
+  @Benchmark
+  def mapValueToVelocity(): Int = {
+    index = (index + 1) % BenchmarkSetList.triggerValues.length
+    instrument.mapValueToVelocity(BenchmarkSetList.triggerValues(index))
+  }
+
+  @Benchmark
+  def phraseInstrumentFor(): Instrument = {
+    phrase.instrumentFor(kickBankId, nextHandleValue())
+  }
+
+  private def nextHandleValue() = {
+    index = (index + 1) % BenchmarkSetList.handleValues.length
+    BenchmarkSetList.handleValues(index)
+  }
+}
@@ -0,0 +1,26 @@
+package com.seismic.bench
+
+import java.util.concurrent.TimeUnit
+
+import com.seismic.midi.MidiNoteMap
+import org.openjdk.jmh.annotations._
+
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class MidiNoteMapBenchmark {
+  private val notes = Array("C#3", "F-2", "NC#3", "XG8", "TD1/4", "C#3/16", "36", "A#-1")
+  private var index = 0
+
+  @Benchmark
+  def midiValueForNote(): Int = {
+    index = (index + 1) % notes.length
+    MidiNoteMap.midiValueForNote(notes(index))
+  }
+
+  @Benchmark
+  def channelForNote(): Int = {
+    index = (index + 1) % notes.length
+    MidiNoteMap.channelForNote(notes(index), 0)
+  }
+}
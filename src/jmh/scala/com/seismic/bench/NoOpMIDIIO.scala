@@ -0,0 +1,47 @@
+package com.seismic.bench
+
+import javax.sound.midi.MidiMessage
+
+import com.seismic.midi.{ControlChange, MIDIIO, MidiListener, Note}
+
+/**
+  * A MIDIIO that goes nowhere, so a benchmark measures Seismic and not the OS MIDI stack. It counts what it was
+  * sent so the JIT can't decide the calls are dead.
+  */
+class NoOpMIDIIO extends MIDIIO {
+  var sent = 0L
+
+  override def attachedInputs() = Array.empty[String]
+  override def attachedOutputs() = Array.empty[String]
+  override def addInput(deviceNum: Int) = false
+  override def removeInput(deviceNum: Int) = false
+  override def addInput(deviceName: String) = false
+  override def removeInput(deviceName: String) = false
+  override def addOutput(deviceNum: Int) = false
+  override def removeOutput(deviceNum: Int) = false
+  override def addOutput(deviceName: String) = false
+  override def removeOutput(deviceName: String) = false
+  override def clearInputs(): Unit = {}
+  override def clearOutputs(): Unit = {}
+  override def clearAll(): Unit = {}
+  override def sendMessage(data: Array[Byte]): Unit = sent += 1
+  override def sendMessage(status: Int): Unit = sent += 1
+  override def sendMessage(status: Int, data: Int): Unit = sent += 1
+  override def sendMessage(status: Int, data1: Int, data2: Int): Unit = sent += 1
+  override def sendMessage(command: Int, channel: Int, data1: Int, data2: Int): Unit = sent += 1
+  override def sendMessage(message: MidiMessage): Unit = sent += 1
+  override def sendNoteOn(channel: Int, pitch: Int, velocity: Int): Unit = sent += 1
+  override def sendNoteOn(note: Note): Unit = sent += 1
+  override def sendNoteOff(channel: Int, pitch: Int, velocity: Int): Unit = sent += 1
+  override def sendNoteOff(note: Note): Unit = sent += 1
+  override def sendNoteOn(channel: Int, pitch: Int, velocity: Int, originNanos: Long): Unit = sent += 1
+  override def sendNoteOff(channel: Int, pitch: Int, velocity: Int, originNanos: Long): Unit = sent += 1
+  override def sendNotes(commands: Array[Int], channels: Array[Int], pitches: Array[Int], count: Int,
+                         defaultChannel: Int, velocity: Int, originNanos: Long): Unit = sent += count
+  override def sendControllerChange(channel: Int, number: Int, value: Int): Unit = sent += 1
+  override def sendControllerChange(change: ControlChange): Unit = sent += 1
+  override def addMidiListener(listener: MidiListener) = false
+  override def removeMidiListener(listener: MidiListener) = false
+  override def getBusName = "no-op"
+  override def close(): Unit = {}
+}
@@ -0,0 +1,40 @@
+package com.seismic.bench
+
+import java.util.concurrent.TimeUnit
+
+import com.seismic.messages.Triggers
+import com.seismic.{Seismic, TriggeredState}
+import org.openjdk.jmh.annotations._
+
+/**
+  * A whole hit, from trigger id and raw values to MIDI calls, with the MIDI calls going nowhere.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class SeismicTriggerBenchmark {
+  private var midiIO: NoOpMIDIIO = _
+  private var seismic: Seismic = _
+  private val kick = Triggers.idFor("KICK")
+  private val snare = Triggers.idFor("SNARE")
+  private var index = 0
+
+  @Setup
+  def setup(): Unit = {
+    val preferences = BenchmarkSetList.preferences
+    midiIO = new NoOpMIDIIO
+    seismic = new Seismic(midiIO, preferences, new TriggeredState)
+    seismic.setSetList(BenchmarkSetList.setList(preferences))
+  }
+
+  @Benchmark
+  def triggerAndOff(): Long = {
+    index += 1
+    val triggerId = if ((index & 1) == 0) kick else snare
+    val handleValue = BenchmarkSetList.handleValues(index % BenchmarkSetList.handleValues.length)
+    val triggerValue = BenchmarkSetList.triggerValues(index % BenchmarkSetList.triggerValues.length)
+    seismic.trigger(triggerId, (index & 4) == 0, triggerValue, handleValue)
+    seismic.off(triggerId)
+    midiIO.sent
+  }
+}
@@ -0,0 +1,42 @@
+package com.seismic.bench
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.util.concurrent.TimeUnit
+
+import com.seismic.SetList
+import com.seismic.io.ObjectMapperFactory.objectMapper
+import com.seismic.io.SetListSnapshot
+import org.openjdk.jmh.annotations._
+
+/**
+  * Loading and saving a 200 song library as JSON and as a binary SetListSnapshot, in memory so the disk isn't what's
+  * measured.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class SetListFormatBenchmark {
+  private val library = BenchmarkSetList.library(200, 8)
+  private val json = objectMapper.writeValueAsBytes(library)
+  private val snapshot = {
+    val out = new ByteArrayOutputStream()
+    SetListSnapshot.write(library, out)
+    out.toByteArray
+  }
+
+  @Benchmark
+  def readJson(): SetList = objectMapper.readValue(json, classOf[SetList])
+
+  @Benchmark
+  def readSnapshot(): SetList = SetListSnapshot.read(new ByteArrayInputStream(snapshot))
+
+  @Benchmark
+  def writeJson(): Array[Byte] = objectMapper.writeValueAsBytes(library)
+
+  @Benchmark
+  def writeSnapshot(): Int = {
+    val out = new ByteArrayOutputStream(snapshot.length)
+    SetListSnapshot.write(library, out)
+    out.size
+  }
+}
@@ -0,0 +1,27 @@
+package com.seismic.bench
+
+import java.util.concurrent.TimeUnit
+
+import com.seismic.messages.{Message, TriggerMessageParser}
+import org.openjdk.jmh.annotations._
+
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class TriggerMessageParserBenchmark {
+  private val messages = Array(
+    "T,ON,KICK,203,152,0",
+    "T,ON,SNARE,1023,880,1",
+    "T,OFF,KICK",
+    "T,ON,KICK,640,12,0\r",
+    "T,OFF,SNARE",
+    "PATCH,7",
+    "PHRASE,NEXT")
+  private var index = 0
+
+  @Benchmark
+  def from(): Message = {
+    index = (index + 1) % messages.length
+    TriggerMessageParser.from(messages(index))
+  }
+}
@@ -0,0 +1,65 @@
+package com.seismic.serial
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+object StandardSerialIOBenchmark {
+  final val LinesPerBurst = 16
+}
+
+/**
+  * Framing lines out of StandardSerialIO's receive ring, as SerialMonitor does, without a port: each invocation
+  * writes a burst of synthetic trigger lines into the ring the way serialEvent would, then reads them all back.
+  * Lives in com.seismic.serial to reach the ring directly.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class StandardSerialIOBenchmark {
+  import StandardSerialIOBenchmark._
+
+  private val serialIO = new StandardSerialIO("bench")
+  private val dest = new Array[Byte](SerialFrame.MaxLength)
+  private val burst = (0 until LinesPerBurst).map { i =>
+    if (i % 4 == 3) "T,OFF,KICK\n" else s"T,ON,${if (i % 2 == 0) "KICK" else "SNARE"},${600 + i},${i * 60},${i % 2}\n"
+  }.mkString.getBytes("US-ASCII")
+
+  @Benchmark
+  @OperationsPerInvocation(LinesPerBurst)
+  def readBytesUntilIntoBuffer(blackhole: Blackhole): Unit = {
+    fill()
+    var length = serialIO.readBytesUntil(10, dest)
+    while (length > 0) {
+      blackhole.consume(length)
+      length = serialIO.readBytesUntil(10, dest)
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LinesPerBurst)
+  def readBytesUntilAllocating(blackhole: Blackhole): Unit = {
+    fill()
+    var line = serialIO.readBytesUntil(10)
+    while (line != null) {
+      blackhole.consume(line)
+      line = serialIO.readBytesUntil(10)
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LinesPerBurst)
+  def readStringUntil(blackhole: Blackhole): Unit = {
+    fill()
+    var line = serialIO.readStringUntil(10)
+    while (line != null) {
+      blackhole.consume(line)
+      line = serialIO.readStringUntil(10)
+    }
+  }
+
+  private def fill(): Unit = {
+    serialIO.ring.write(burst, 0, burst.length)
+  }
+}
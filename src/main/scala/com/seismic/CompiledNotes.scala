@@ -0,0 +1,82 @@
+package com.seismic
+
+import com.seismic.log.Log
+import com.seismic.midi.MidiNoteMap
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * An Instrument's notes parsed once into what to send when the trigger goes on and when it goes off, so that
+  * Seismic.trigger and Seismic.off never have to look at a note string.
+  *
+  * On:  plain and X notes send a note on, N notes send a note off, T notes send nothing.
+  * Off: plain and T notes send a note off, X and N notes send nothing.
+  *
+  * A channel of SongChannel means the note had no /channel suffix and goes out on the song's channel.
+  * offCommands is always NoteOff; it's there so the off notes can be handed to MIDIIO.sendNotes like the on notes.
+  */
+class CompiledNotes(val source: Array[String],
+                    val onCommands: Array[Int],
+                    val onChannels: Array[Int],
+                    val onPitches: Array[Int],
+                    val offChannels: Array[Int],
+                    val offPitches: Array[Int]) {
+
+  val onCount = onCommands.length
+  val offCount = offChannels.length
+  val offCommands = Array.fill(offCount)(CompiledNotes.NoteOff)
+}
+
+object CompiledNotes {
+  val NoteOn = 0x90
+  val NoteOff = 0x80
+  val SongChannel = -1
+
+  def compile(notes: Array[String]): CompiledNotes = {
+    val onCommands = ArrayBuffer[Int]()
+    val onChannels = ArrayBuffer[Int]()
+    val onPitches = ArrayBuffer[Int]()
+    val offChannels = ArrayBuffer[Int]()
+    val offPitches = ArrayBuffer[Int]()
+
+    notes.foreach { note =>
+      try {
+        val channel = MidiNoteMap.channelForNote(note, SongChannel)
+        val pitch = MidiNoteMap.midiValueForNote(note)
+
+        if (note.startsWith("N")) {
+          onCommands += NoteOff
+          onChannels += channel
+          onPitches += pitch
+        } else if (note.startsWith("X")) {
+          onCommands += NoteOn
+          onChannels += channel
+          onPitches += pitch
+        } else if (note.startsWith("T")) {
+          offChannels += channel
+          offPitches += pitch
+        } else {
+          onCommands += NoteOn
+          onChannels += channel
+          onPitches += pitch
+          offChannels += channel
+          offPitches += pitch
+        }
+      } catch {
+        case e: Exception =>
+          Log.warn(Log.Phrase, "Ignoring note '%s' that can't be sent", note)
+      }
+    }
+
+    new CompiledNotes(notes,
+                       onCommands.toArray,
+                       onChannels.toArray,
+                       onPitches.toArray,
+                       offChannels.toArray,
+                       offPitches.toArray)
+  }
+
+  def channelFor(channel: Int, songChannel: Int) = {
+    if (channel == SongChannel) songChannel else channel
+  }
+}
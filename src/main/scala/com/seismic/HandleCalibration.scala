@@ -3,9 +3,14 @@ package com.seismic
 import com.seismic.utils.ArrayUtils.getConstrainedItem
 import com.seismic.utils.ValueMapHelper._
 
+/**
+  * hysteresis is how far, in raw handle values, the handle has to move past the edge of an instrument's zone before
+  * the next hit picks another one. See HandleTable.
+  */
 case class HandleCalibration(var calibrationMinValue: Int = 0,
                              var calibrationMaxValue: Int = 1023,
-                             var inverted: Boolean = true) {
+                             var inverted: Boolean = true,
+                             var hysteresis: Int = 0) {
 
   def select[T](value: Int, items: Seq[T]) = {
     val (min, max) = getMinMax
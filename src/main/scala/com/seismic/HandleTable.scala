@@ -0,0 +1,124 @@
+package com.seismic
+
+import com.seismic.utils.ValueMapHelper.map
+
+object HandleTable {
+  /**
+    * Handle values from 0 up to this are looked up; anything outside, which the handle never sends, is worked out.
+    */
+  val TableSize = 1024
+
+  /**
+    * A table for the bank's instruments, calibration and zone weights as they are now.
+    */
+  def apply(instruments: Array[Instrument], handleCalibration: HandleCalibration, zoneWeights: Array[Int]) = {
+    new HandleTable(instruments,
+                    handleCalibration,
+                    handleCalibration.calibrationMinValue,
+                    handleCalibration.calibrationMaxValue,
+                    handleCalibration.inverted,
+                    handleCalibration.hysteresis,
+                    zoneWeights)
+  }
+}
+
+/**
+  * Which instrument each handle value picks, worked out once for a bank and made again only when its instruments,
+  * its zone weights or the handle calibration change.
+  *
+  * Without zone weights, every instrument gets the same share of the handle's travel and a value picks exactly what
+  * HandleCalibration.select would. With them, each instrument's share of the travel is its weight over the total, so
+  * (1, 2, 1) gives the middle instrument half the handle. Weights that aren't one per instrument, that are negative or
+  * that are all zero are ignored.
+  *
+  * Hysteresis, in raw handle values, keeps the last instrument picked until the handle has moved that far past the
+  * edge of its zone, so a handle resting on a boundary doesn't flicker between two instruments.
+  */
+class HandleTable private (val instruments: Array[Instrument],
+                           val handleCalibration: HandleCalibration,
+                           val calibrationMinValue: Int,
+                           val calibrationMaxValue: Int,
+                           val inverted: Boolean,
+                           val hysteresis: Int,
+                           val zoneWeights: Array[Int]) {
+  import HandleTable._
+
+  private val (min, max) = if (inverted) {
+    (calibrationMaxValue, calibrationMinValue)
+  } else {
+    (calibrationMinValue, calibrationMaxValue)
+  }
+
+  private val weights = if (usableWeights) zoneWeights else null
+  private val totalWeight = if (weights == null) 0 else weights.sum
+
+  val indices: Array[Int] = Array.tabulate(TableSize) { value => zoneFor(value) }
+
+  // the lowest and highest handle values in each instrument's zone, for hysteresis
+  private val zoneLow = Array.fill(instruments.length)(Int.MaxValue)
+  private val zoneHigh = Array.fill(instruments.length)(Int.MinValue)
+
+  if (instruments.nonEmpty) {
+    indices.indices.foreach { value =>
+      val index = indices(value)
+      zoneLow(index) = Math.min(zoneLow(index), value)
+      zoneHigh(index) = Math.max(zoneHigh(index), value)
+    }
+  }
+
+  /**
+    * Whether this table was made for the instruments, calibration and weights as they are now.
+    */
+  def isCurrent(instruments: Array[Instrument], handleCalibration: HandleCalibration, zoneWeights: Array[Int]) = {
+    (this.instruments eq instruments) &&
+      (this.handleCalibration eq handleCalibration) &&
+      (this.zoneWeights eq zoneWeights) &&
+      calibrationMinValue == handleCalibration.calibrationMinValue &&
+      calibrationMaxValue == handleCalibration.calibrationMaxValue &&
+      inverted == handleCalibration.inverted &&
+      hysteresis == handleCalibration.hysteresis
+  }
+
+  /**
+    * @param lastIndex the index last picked from this table, or -1 if there wasn't one.
+    * @return the index of the instrument for the handle value.
+    */
+  def indexFor(value: Int, lastIndex: Int): Int = {
+    val index = if (value >= 0 && value < indices.length) indices(value) else zoneFor(value)
+    if (hysteresis > 0 && lastIndex >= 0 && lastIndex != index && lastIndex < zoneLow.length &&
+        value >= zoneLow(lastIndex) - hysteresis && value <= zoneHigh(lastIndex) + hysteresis) {
+      lastIndex
+    } else {
+      index
+    }
+  }
+
+  private def usableWeights = {
+    zoneWeights != null &&
+      zoneWeights.length == instruments.length &&
+      zoneWeights.forall { weight => weight >= 0 } &&
+      zoneWeights.exists { weight => weight > 0 }
+  }
+
+  private def zoneFor(value: Int): Int = {
+    if (instruments.isEmpty) {
+      0
+    } else if (weights == null) {
+      val index = Math.round(map(value, min, max, 0, instruments.length - 1))
+      Math.max(0, Math.min(index, instruments.length - 1))
+    } else {
+      val target = Math.max(0f, Math.min(map(value, min, max, 0, 1), 1f)) * totalWeight
+      var index = 0
+      var end = weights(0)
+      while (index < weights.length - 1 && target >= end) {
+        index += 1
+        end += weights(index)
+      }
+      // the very end of the travel belongs to the last instrument that has a zone at all
+      while (weights(index) == 0) {
+        index -= 1
+      }
+      index
+    }
+  }
+}
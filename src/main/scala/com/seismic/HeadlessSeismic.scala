@@ -0,0 +1,38 @@
+package com.seismic
+
+import java.io.File
+import java.util.concurrent.CountDownLatch
+
+import com.seismic.log.Log
+
+/**
+  * Runs the engine with no UI, for a rack box with no screen: loads the set list, opens the serial port and MIDI
+  * bus, and starts triggering straight away. Nothing from AWT or Swing is loaded, so it starts faster and uses
+  * less memory than SeismicApp, and no hit ever waits on the event dispatch thread. Runs until killed.
+  */
+object HeadlessSeismic {
+
+  private val stopped = new CountDownLatch(1)
+
+  def main(args: Array[String]): Unit = {
+    System.setProperty("java.awt.headless", "true")
+
+    if (args.length < 3) {
+      println("java -jar seismic.jar --headless [set list file] [serial port] [MIDI port]")
+      return
+    }
+
+    val setListFile = new File(args(0))
+    if (!setListFile.isFile) {
+      println(s"No set list at ${setListFile.getAbsolutePath}")
+      return
+    }
+
+    val engine = new SeismicEngine
+    val setList = engine.seismic.openSetList(setListFile)
+    engine.start(args(1), args(2))
+    Log.info(Log.General, "Playing %s headless", setList.name)
+
+    stopped.await()
+  }
+}
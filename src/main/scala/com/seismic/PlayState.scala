@@ -0,0 +1,32 @@
+package com.seismic
+
+object PlayState {
+  val Empty = PlayState(null, null, null, null, -1)
+}
+
+/**
+  * Where Seismic is in the set list: the song and phrase hits play, and the index and position that next and
+  * previous phrase move from. A PlayState never changes; Seismic publishes a whole new one to move, so a hit reads
+  * one reference and always gets a song and phrase that belong together, however the phrase is being changed.
+  *
+  * @param index    the set list's index, or null before there's a set list. May be out of date if the set list
+  *                 has been edited since; Seismic rebuilds it before navigating.
+  * @param position where phrase is in index, or -1 if it isn't there.
+  */
+case class PlayState(setList: SetList, song: Song, phrase: Phrase, index: SetListIndex, position: Int) {
+
+  def isPlaying = song != null && phrase != null
+
+  def withSong(song: Song, phrase: Phrase) = copy(song = song, phrase = phrase, position = positionOf(index, phrase))
+
+  /**
+    * Moves to the phrase, and to the phrase's song if it knows it.
+    */
+  def withPhrase(phrase: Phrase) = withSong(if (phrase.song != null) phrase.song else song, phrase)
+
+  def withIndex(index: SetListIndex) = copy(index = index, position = positionOf(index, phrase))
+
+  private def positionOf(index: SetListIndex, phrase: Phrase) = {
+    if (index == null || phrase == null) -1 else index.positionOf(phrase)
+  }
+}
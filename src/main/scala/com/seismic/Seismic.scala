@@ -1,15 +1,14 @@
 package com.seismic
 
 import java.io.File
+import java.util.concurrent.atomic.{AtomicLong, AtomicReference}
 
-import com.fasterxml.jackson.annotation.{JsonBackReference, JsonManagedReference}
+import com.fasterxml.jackson.annotation.{JsonBackReference, JsonIgnore, JsonManagedReference}
 import com.seismic.io.{Preferences, SetListSerializer}
-import com.seismic.messages.TriggerOnMessage
+import com.seismic.log.Log
+import com.seismic.messages.{TriggerOnMessage, Triggers}
 import com.seismic.midi.{MIDIIO, MidiNoteMap}
 import com.seismic.ui.utils.Selectable
-import com.seismic.utils.ValueMapHelper.map
-import com.seismic.utils.ArrayUtils.wrapIndex
-import com.seismic.scala.OptionExtensions._
 import com.seismic.utils.Next.{highest, next}
 import com.seismic.scala.ArrayExtensions._
 
@@ -24,6 +23,17 @@ object InstrumentBanks {
     s"${bankPrefixForFingerTrigger(triggerOnMessage.fingerTrigger)}${triggerOnMessage.name}"
   }
 
+  /**
+    * Index into names for a trigger id from Triggers; the ALT bank always follows its trigger's bank.
+    */
+  def bankIdForTrigger(triggerId: Int, fingerTrigger: Boolean) = {
+    triggerId * 2 + (if (fingerTrigger) 1 else 0)
+  }
+
+  def banksById(nameToInstrumentBanks: Map[String, InstrumentBank]) = {
+    names.map { name => nameToInstrumentBanks.getOrElse(name, null) }
+  }
+
   def triggerThresholdForBank(name: String, triggerThresholds: TriggerThresholds) = {
     if (name.indexOf("KICK") > -1) {
       () => triggerThresholds.kickThreshold
@@ -43,84 +53,160 @@ object InstrumentBanks {
   */
 class Seismic(midiIO: MIDIIO, preferences: Preferences, triggeredState: TriggeredState) {
 
-  var setListOpt: Option[SetList] = None
-  var currentSongOpt: Option[Song] = None
-  var currentPhraseOpt: Option[Phrase] = None
+  /**
+    * The set list, song and phrase, replaced as a whole and never changed in place. Hits read it once and don't
+    * lock; phrase changes from the footswitch on the serial thread and from the UI on the EDT each build the next
+    * state from the one they saw and swap it in only if nobody else got there first.
+    */
+  private val playState = new AtomicReference[PlayState](PlayState.Empty)
+
+  // filled in by off for each trigger off, so only ever touched from the dispatch thread
+  private val last = new TriggeredState.Last
 
   var onPhraseChangeHandlerOpt: Option[(Phrase) => Unit] = None
 
-  def trigger(trigger: TriggerOnMessage): Unit = {
-    withCurrentPhraseInSong { (phrase, song) =>
-      val instrument = phrase.instrumentFor(trigger)
-      val velocity = instrument.mapValueToVelocity(trigger.triggerValue)
-      instrument.notes.foreach { (note) =>
-        if (note.startsWith("N")) {
-          sendNoteOff(song, note)
-        } else if (note.startsWith("X")) {
-          sendNoteOn(song, note, velocity)
-        } else if ( ! note.startsWith("T")) {
-          sendNoteOn(song, note, velocity)
-        }
+  def state = playState.get
+
+  def setListOpt = Option(playState.get.setList)
+
+  def currentSongOpt = Option(playState.get.song)
+
+  def currentPhraseOpt = Option(playState.get.phrase)
+
+  def trigger(triggerOn: TriggerOnMessage): Unit = {
+    trigger(triggerOn.triggerId, triggerOn.fingerTrigger, triggerOn.triggerValue, triggerOn.handleValue)
+  }
+
+  def trigger(triggerId: Int, fingerTrigger: Boolean, triggerValue: Int, handleValue: Int): Unit = {
+    trigger(triggerId, fingerTrigger, triggerValue, handleValue, 0L)
+  }
+
+  /**
+    * @param originNanos System.nanoTime the hit arrived at the serial port, so a scheduled MIDI output can deliver it
+    *                    a fixed time after that, or 0 for now.
+    * @return System.nanoTime the hit's notes were queued on the MIDI output, or 0 if it had none to send.
+    */
+  def trigger(triggerId: Int, fingerTrigger: Boolean, triggerValue: Int, handleValue: Int, originNanos: Long): Long = {
+    val state = playState.get
+    if (state.isPlaying) {
+      val bankId = InstrumentBanks.bankIdForTrigger(triggerId, fingerTrigger)
+      if (state.phrase.hasInstrumentBank(bankId)) {
+        triggerInstrument(state.phrase.instrumentFor(bankId, handleValue), state.song, triggerId, triggerValue,
+                          originNanos)
+      } else {
+        Log.warn(Log.Trigger, "No instrument bank for trigger %d", triggerId)
+        0L
       }
-      triggeredState.triggered(trigger.name, instrument, song)
-      instrument.fireTriggerOnListener(velocity)
+    } else {
+      0L
     }
   }
 
+  private def triggerInstrument(instrument: Instrument, song: Song, triggerId: Int, triggerValue: Int,
+                                originNanos: Long): Long = {
+    val velocity = instrument.mapValueToVelocity(triggerValue)
+    val notes = instrument.compiled
+    val songChannel = song.channel - 1
+    if (notes.onCount > 1) {
+      sendNotes(notes.onCommands, notes.onChannels, notes.onPitches, notes.onCount, songChannel, velocity, originNanos)
+    } else if (notes.onCount == 1) {
+      val channel = CompiledNotes.channelFor(notes.onChannels(0), songChannel)
+      if (notes.onCommands(0) == CompiledNotes.NoteOff) {
+        sendNoteOff(channel, notes.onPitches(0), originNanos)
+      } else {
+        sendNoteOn(channel, notes.onPitches(0), velocity, originNanos)
+      }
+    }
+    val queuedNanos = if (notes.onCount > 0) System.nanoTime() else 0L
+    triggeredState.triggered(triggerId, instrument, song)
+    instrument.fireTriggerOnListener(velocity)
+    queuedNanos
+  }
+
   def off(name: String): Unit = {
-    triggeredState.lastTriggered(name) match {
-      case Some(Tuple2(instrument, song)) =>
-        instrument.notes.foreach { (note) =>
-          if (note.startsWith("T")) {
-            sendNoteOff(song, note)
-          } else if (!note.startsWith("X") && !note.startsWith("N")) {
-            sendNoteOff(song, note)
-          }
-        }
-        instrument.fireTriggerOffListener()
-      case None =>
-        System.err.println(f"Somehow managed to trigger an off event with no previous on event for $name. Ignoring.")
+    off(Triggers.idFor(name))
+  }
+
+  /**
+    * Only called from the dispatch thread, which owns last; the last hit for the trigger is read from
+    * triggeredState as a consistent pair even while the UI reads it too.
+    */
+  def off(triggerId: Int): Unit = {
+    off(triggerId, 0L)
+  }
+
+  /**
+    * @param originNanos as for trigger.
+    * @return as for trigger.
+    */
+  def off(triggerId: Int, originNanos: Long): Long = {
+    if (triggeredState.lastTriggered(triggerId, last)) {
+      val notes = last.instrument.compiled
+      val songChannel = last.song.channel - 1
+      if (notes.offCount > 1) {
+        sendNotes(notes.offCommands, notes.offChannels, notes.offPitches, notes.offCount, songChannel, 0, originNanos)
+      } else if (notes.offCount == 1) {
+        sendNoteOff(CompiledNotes.channelFor(notes.offChannels(0), songChannel), notes.offPitches(0), originNanos)
+      }
+      val queuedNanos = if (notes.offCount > 0) System.nanoTime() else 0L
+      last.instrument.fireTriggerOffListener()
+      queuedNanos
+    } else {
+      Log.warn(Log.Trigger, "Somehow managed to trigger an off event with no previous on event for trigger %d. Ignoring.", triggerId)
+      0L
+    }
+  }
+
+  /**
+    * Chords go out as one batch so the MIDI output takes its lock once rather than once per note.
+    */
+  private def sendNotes(commands: Array[Int], channels: Array[Int], pitches: Array[Int], count: Int,
+                        songChannel: Int, velocity: Int, originNanos: Long): Unit = {
+    try {
+      midiIO.sendNotes(commands, channels, pitches, count, songChannel, velocity, originNanos)
+    } catch {
+      case e: Exception => Log.error(Log.Midi, "Couldn't send %d notes on c: %d", count, songChannel, e)
     }
   }
 
-  private def sendNoteOn(song: Song, note: String, velocity: Int = 0): Unit = {
+  private def sendNoteOn(channel: Int, pitch: Int, velocity: Int, originNanos: Long): Unit = {
     try {
-      midiIO.sendNoteOn(MidiNoteMap.channelForNote(note, song.channel - 1),
-                         MidiNoteMap.midiValueForNote(note),
-                         velocity)
+      midiIO.sendNoteOn(channel, pitch, velocity, originNanos)
     } catch {
-      case e: Exception => e.printStackTrace()
+      case e: Exception => Log.error(Log.Midi, "Couldn't send note on c: %d p: %d", channel, pitch, e)
     }
   }
 
-  private def sendNoteOff(song: Song, note: String): Unit = {
+  private def sendNoteOff(channel: Int, pitch: Int, originNanos: Long): Unit = {
     try {
-      midiIO.sendNoteOff(MidiNoteMap.channelForNote(note, song.channel - 1),
-                          MidiNoteMap.midiValueForNote(note),
-                          0)
+      midiIO.sendNoteOff(channel, pitch, 0, originNanos)
     } catch {
-      case e: Exception => e.printStackTrace()
+      case e: Exception => Log.error(Log.Midi, "Couldn't send note off c: %d p: %d", channel, pitch, e)
     }
   }
 
   def patch(patch: Int): Unit = {
-    println(f"patch switch: $patch")
-    currentSongOpt.foreach { song =>
-      song.getPhrases.find { phrase =>
-        phrase.patch == patch
-      } match {
+    Log.info(Log.Phrase, "patch switch: %d", patch)
+    val state = indexedState
+    if (state.song != null) {
+      val phraseOpt = if (state.index != null) {
+        state.index.phraseForPatch(state.song, patch)
+      } else {
+        state.song.getPhrases.find { phrase => phrase.patch == patch }
+      }
+      phraseOpt match {
         case Some(phrase) => setCurrentPhrase(phrase)
-        case None => System.out.println(s"No phrase in $currentSongOpt with patch $patch")
+        case None => Log.warn(Log.Phrase, "No phrase in %s with patch %d", state.song.name, patch)
       }
     }
   }
 
   def selectNextPhrase(): Unit = {
-    indexOfCurrentPhrase().flatMap { index => selectPhraseAt(index + 1) }
+    moveFromCurrentPosition { (index, position) => index.phraseAfter(position) }
   }
 
   def selectPreviousPhrase(): Unit = {
-    indexOfCurrentPhrase().flatMap { index => selectPhraseAt(index - 1) }
+    moveFromCurrentPosition { (index, position) => index.phraseBefore(position) }
   }
 
   def newSetList = {
@@ -128,17 +214,21 @@ class Seismic(midiIO: MIDIIO, preferences: Preferences, triggeredState: Triggere
     setList.setPreferences(preferences)
     setList.addSong()
 
-    this.setListOpt = Option(setList)
-    this.setCurrentSong(setList.songs.head)
+    setSetList(setList)
 
     setList
   }
 
+  /**
+    * Indexes the set list on the calling thread, then starts playing its first phrase.
+    */
   def setSetList(setList: SetList): Unit = {
-    setListOpt = Option(setList)
     setList.setPreferences(preferences)
-    setCurrentSong(setList.songs.head)
-    setCurrentPhrase(setList.songs.head.getPhrases.head)
+    val index = new SetListIndex(setList)
+    val song = setList.songs.head
+    val phrase = song.getPhrases.head
+    playState.set(PlayState(setList, song, phrase, index, index.positionOf(phrase)))
+    firePhraseChange(phrase)
   }
 
   def openSetList(file: File) = {
@@ -147,89 +237,85 @@ class Seismic(midiIO: MIDIIO, preferences: Preferences, triggeredState: Triggere
     setList
   }
 
+  /**
+    * Saving follows an edit, so this is also when the index is brought up to date, on the editor's thread rather
+    * than the next time a phrase is changed from the footswitch.
+    */
   def save(): Unit = {
+    indexedState
     setListOpt.foreach { setlist => setlist.write() }
   }
 
   def setCurrentSong(song: Song): Unit = {
-    currentSongOpt = Option(song)
     song.setPreferences(preferences)
-    setCurrentPhrase(song.getPhrases.head)
+    val phrase = song.getPhrases.head
+    update { state => state.withSong(song, phrase) }
+    firePhraseChange(phrase)
   }
 
   def setCurrentPhrase(phrase: Phrase): Unit = {
-    currentPhraseOpt = Option(phrase)
-    onPhraseChangeHandlerOpt.foreach { handler => handler(phrase) }
+    update { state => state.withPhrase(phrase) }
+    firePhraseChange(phrase)
   }
 
   def onPhraseChange(handler: (Phrase) => Unit): Unit = {
     onPhraseChangeHandlerOpt = Option(handler)
   }
 
-  private def getPreviousSong = {
-    indexOfCurrentSong().flatMap { index => getSongAt(index - 1) }
-  }
-
-  private def getNextSong = {
-    indexOfCurrentSong().flatMap { index => getSongAt(index + 1) }
+  private def firePhraseChange(phrase: Phrase): Unit = {
+    onPhraseChangeHandlerOpt.foreach { handler => handler(phrase) }
   }
 
-  private def selectPhraseAt(index: Int): Option[Phrase] = {
-    currentSongOpt.flatMap { song =>
-      if (song.getPhrases.length == index) {
-        getFirstPhraseInNextSong
-      } else if (index < 0) {
-        getLastPhraseFromPreviousSong
+  /**
+    * Moves to the phrase f picks from the current phrase's position in playing order. If the current phrase has
+    * somehow gone from the set list, starts again from the first phrase of the current song.
+    */
+  private def moveFromCurrentPosition(f: (SetListIndex, Int) => Option[Phrase]): Unit = {
+    indexedState
+    var moved: Phrase = null
+    update { state =>
+      moved = null
+      if (state.index == null || !state.isPlaying) {
+        state
       } else {
-        Option(song.getPhrases(wrapIndex(index, song.getPhrases)))
+        val nextOpt = if (state.position >= 0) f(state.index, state.position) else state.song.getPhrases.headOption
+        nextOpt match {
+          case Some(next) =>
+            moved = next
+            state.withPhrase(next)
+          case None => state
+        }
       }
-    }.tap { phrase =>
-      currentSongOpt = Option(phrase.song)
-      setCurrentPhrase(phrase)
     }
+    if (moved != null) firePhraseChange(moved)
   }
 
-  private def getLastPhraseFromPreviousSong: Option[Phrase] = {
-    getPreviousSong.flatMap { song => Option(song.getPhrases.last) }
-  }
-
-  private def getFirstPhraseInNextSong: Option[Phrase] = {
-    getNextSong.flatMap { song => Option(song.getPhrases.head) }
-  }
-
-  private def indexOfCurrentSong() = {
-    withCurrentSetListAndSong { (setList, song) => setList.songs.indexOf(song) }
-  }
-
-  private def indexOfCurrentPhrase() = {
-    withCurrentSongAndPhrase { (song, phrase) => song.getPhrases.indexOf(phrase) }
-  }
-
-  private def withCurrentSongAndPhrase[T](f: (Song, Phrase) => T) = {
-    currentSongOpt.flatMap { song =>
-      currentPhraseOpt.flatMap { phrase => Option(f(song, phrase)) }
-    }
-  }
-
-  private def withCurrentSetListAndSong[T](f: (SetList, Song) => T) = {
-    setListOpt.flatMap { setList =>
-      currentSongOpt.flatMap { song => Option(f(setList, song)) }
-    }
-  }
-
-  private def getSongAt(index: Int): Option[Song] = {
-    withCurrentSetListAndSong { (setList, song) =>
-      setList.songs(wrapIndex(index, setList.songs))
+  /**
+    * The current state, with its index rebuilt first if the set list's songs or phrases have changed since.
+    */
+  private def indexedState: PlayState = {
+    update { state =>
+      if (state.setList == null || (state.index != null && state.index.isCurrent)) {
+        state
+      } else {
+        state.withIndex(new SetListIndex(state.setList))
+      }
     }
   }
 
-  private def withCurrentPhraseInSong(f: (Phrase, Song) => Unit): Unit = {
-    for {
-      song <- currentSongOpt
-      phrase <- currentPhraseOpt
-    } yield {
-      f(phrase, song)
+  /**
+    * Publishes the state f makes from the current one, trying again from the new current state if another thread
+    * published first. f may run more than once, so shouldn't do anything but build the state. Visible to tests so
+    * they can publish from inside f to lose the race.
+    */
+  private[seismic] def update(f: (PlayState) => PlayState): PlayState = {
+    var current = playState.get
+    var next = f(current)
+    while ((next ne current) && !playState.compareAndSet(current, next)) {
+      current = playState.get
+      next = f(current)
     }
+    next
   }
 }
 
@@ -237,12 +323,28 @@ case class SetList(var name: String) {
 
   @JsonManagedReference var songs: Array[Song] = Array.empty
   private var preferencesOpt: Option[Preferences] = None
+  @JsonIgnore private val structure = new AtomicLong
+  /**
+    * The file this set list was opened from, JSON or snapshot, which it's saved back to; null if it's never been
+    * opened from one.
+    */
+  @JsonIgnore @volatile var file: File = _
 
   def setPreferences(preferences: Preferences) = {
     this.preferencesOpt = Option(preferences)
     songs.foreach { song => song.setPreferences(preferences) }
   }
 
+  /**
+    * Moves on whenever songs or phrases are added, removed or reordered, or a phrase's patch changes, so anything
+    * built from the set list's layout, like a SetListIndex, knows to rebuild.
+    */
+  def structureVersion = structure.get
+
+  def structureChanged(): Unit = {
+    structure.incrementAndGet()
+  }
+
   def addSong() = {
     preferencesOpt match {
       case Some(preferences) =>
@@ -254,6 +356,7 @@ case class SetList(var name: String) {
         newSong.setList = this
 
         songs = songs :+ newSong
+        structureChanged()
         newSong
 
       case None => throw new IllegalStateException("Can't add song because somehow preferences weren't set.")
@@ -262,10 +365,12 @@ case class SetList(var name: String) {
 
   def removeSong(song: Song): Unit = {
     songs = songs.remove(song)
+    structureChanged()
   }
 
   def updateSongs(songs: Seq[Song]): Unit = {
     this.songs = songs.toArray
+    structureChanged()
   }
 
   def write(): Unit = {
@@ -298,6 +403,7 @@ case class Song(var name: String,
   def setPhrases(phrases: Array[Phrase]): Unit = {
     phrases.foreach { phrase => phrase.song = this }
     this.phrases = phrases
+    structureChanged()
   }
 
   def getPhrases = phrases
@@ -318,10 +424,12 @@ case class Song(var name: String,
 
   def updatePhrases(phrases: Seq[Phrase]) = {
     this.phrases = phrases.toArray
+    structureChanged()
   }
 
   def removePhrase(phrase: Phrase): Unit = {
     phrases = phrases.remove(phrase)
+    structureChanged()
   }
 
   def setName(name: String): Unit = {
@@ -332,12 +440,17 @@ case class Song(var name: String,
     this.channel = channel
   }
 
+  def structureChanged(): Unit = {
+    Option(setList).foreach { setList => setList.structureChanged() }
+  }
+
   private def withNewPhrase[T](f: (Phrase) => T) = {
     val newPhrase = createPhrase()
     withPrefs { preferences =>
       setPrefsOnPhrase(newPhrase, preferences)
       f(newPhrase)
       phrases = phrases :+ newPhrase
+      structureChanged()
       newPhrase
     }
   }
@@ -366,10 +479,26 @@ case class Phrase(var name: String, var patch: Int) extends Selectable {
 
   private var nameToInstrumentBanks: Map[String, InstrumentBank] = InstrumentBanks.createDefaultInstrumentBanks
   private var instrumentBanks: Array[InstrumentBank] = nameToInstrumentBanks.values.toArray
+  @JsonIgnore private var banksById: Array[InstrumentBank] = InstrumentBanks.banksById(nameToInstrumentBanks)
   @JsonBackReference var song: Song = _
 
-  def instrumentFor(triggerOnMessage: TriggerOnMessage) = {
-    nameToInstrumentBanks(InstrumentBanks.bankForTrigger(triggerOnMessage)).selectInstrumentForValue(triggerOnMessage.handleValue)
+  def instrumentFor(triggerOnMessage: TriggerOnMessage): Instrument = {
+    instrumentFor(InstrumentBanks.bankIdForTrigger(triggerOnMessage.triggerId, triggerOnMessage.fingerTrigger),
+                   triggerOnMessage.handleValue)
+  }
+
+  def hasInstrumentBank(bankId: Int) = bankId >= 0 && bankId < banksById.length && banksById(bankId) != null
+
+  def instrumentFor(bankId: Int, handleValue: Int): Instrument = {
+    if (!hasInstrumentBank(bankId)) {
+      throw new IllegalArgumentException(s"No instrument bank $bankId in phrase $name")
+    }
+    banksById(bankId).selectInstrumentForValue(handleValue)
+  }
+
+  def setPatch(patch: Int): Unit = {
+    this.patch = patch
+    Option(song).foreach { song => song.structureChanged() }
   }
 
   def setTriggerThresholds(triggerThresholds: TriggerThresholds): Unit = {
@@ -392,6 +521,7 @@ case class Phrase(var name: String, var patch: Int) extends Selectable {
   def setInstrumentBanks(instrumentBanks: Array[InstrumentBank]): Unit = {
     this.instrumentBanks = instrumentBanks
     this.nameToInstrumentBanks = instrumentBanks.map(bank => bank.name -> bank).toMap
+    this.banksById = InstrumentBanks.banksById(nameToInstrumentBanks)
   }
 
   def dup(newPhrase: Phrase): Unit = {
@@ -406,6 +536,9 @@ case class InstrumentBank(name: String) {
 
   private var triggerThresholdsOpt: Option[TriggerThresholds] = None
   private var handleCalibrationOpt: Option[HandleCalibration] = None
+  private var zoneWeights: Array[Int] = null
+  @JsonIgnore @volatile private var handleTable: HandleTable = _
+  @JsonIgnore @volatile private var lastSelectedIndex = -1
 
   def setInstruments(instruments: Array[Instrument]): Unit = {
     this.instruments = instruments
@@ -413,6 +546,15 @@ case class InstrumentBank(name: String) {
 
   def getInstruments = instruments
 
+  /**
+    * How much of the handle's travel each instrument gets, one weight per instrument, or null for even zones.
+    */
+  def setZoneWeights(zoneWeights: Array[Int]): Unit = {
+    this.zoneWeights = zoneWeights
+  }
+
+  def getZoneWeights = zoneWeights
+
   def addNewInstrument(): Instrument = {
     withTriggerThresholds(triggerThresholds => {
       val instrument = newInstrument(InstrumentBanks.triggerThresholdForBank(name, triggerThresholds))
@@ -428,11 +570,12 @@ case class InstrumentBank(name: String) {
   def dupIntoPhrase(newPhrase: Phrase) = {
     val instrumentBank = InstrumentBank(name)
     instrumentBank.setInstruments(instruments.map { instrument =>
-      Instrument(instrument.notes.clone())
+      Instrument(instrument.notes.clone(), instrument.velocityCurve)
     })
     instrumentBank.phrase = newPhrase
     instrumentBank.triggerThresholdsOpt = triggerThresholdsOpt
     instrumentBank.handleCalibrationOpt = handleCalibrationOpt
+    instrumentBank.zoneWeights = Option(zoneWeights).map { weights => weights.clone() }.orNull
     instrumentBank
   }
 
@@ -447,9 +590,27 @@ case class InstrumentBank(name: String) {
     }
   }
 
+  /**
+    * Looked up in the bank's HandleTable, made again only when the instruments, zone weights or calibration have
+    * changed since the last hit.
+    */
   def selectInstrumentForValue(value: Int) = {
     handleCalibrationOpt match {
-      case Some(handleCalibration) => handleCalibration.select(value, instruments)
+      case Some(handleCalibration) =>
+        val instruments = this.instruments
+        if (instruments.isEmpty) {
+          handleCalibration.select(value, instruments)
+        } else {
+          var table = handleTable
+          if (table == null || !table.isCurrent(instruments, handleCalibration, zoneWeights)) {
+            table = HandleTable(instruments, handleCalibration, zoneWeights)
+            handleTable = table
+            lastSelectedIndex = -1
+          }
+          val index = table.indexFor(value, lastSelectedIndex)
+          lastSelectedIndex = index
+          instruments(index)
+        }
       case None => throw new IllegalStateException("Somehow I have no HandleCalibration yet someone's trying to play the instrument")
     }
   }
@@ -485,28 +646,57 @@ case class InstrumentBank(name: String) {
   * TODO: Toggle ability to send midi note off from a trigger on message  instead of the original trigger off message.
   *
   * @param notes
+  * @param velocityCurve how trigger values become velocities. Set lists saved before there were curves have none,
+  *                      which plays as linear.
   */
-case class Instrument(var notes: Array[String]) {
+case class Instrument(var notes: Array[String], var velocityCurve: VelocityCurve = VelocityCurve.linear) {
 
   private var triggeredOnListener: Option[(Int) => Unit] = None
   private var triggeredOffListener: Option[() => Unit] = None
   private var triggerThreshold: Option[() => Int] = None
+  @JsonIgnore @volatile private var compiledNotes = CompiledNotes.compile(notes)
+  @JsonIgnore @volatile private var velocityTable: VelocityTable = _
 
   def setTriggerThreshold(triggerThreshold: () => Int): Unit = {
     this.triggerThreshold = Option(triggerThreshold)
   }
 
+  /**
+    * Looked up in a table for the curve and threshold, made again only when either has changed since the last hit.
+    */
   def mapValueToVelocity(value: Int): Int = {
     val threshold = triggerThreshold match {
       case Some(f) => f()
       case None => 900
     }
-    val mappedValue = map(value, 0, threshold, 0, 127)
-    Math.max(Math.min(mappedValue, 127), 0).toInt
+    val curve = curveOrLinear
+    var table = velocityTable
+    if (table == null || table.threshold != threshold || (table.curve ne curve)) {
+      table = new VelocityTable(curve, threshold)
+      velocityTable = table
+    }
+    table.velocityFor(value)
+  }
+
+  def setVelocityCurve(velocityCurve: VelocityCurve): Unit = {
+    this.velocityCurve = velocityCurve
   }
 
+  private def curveOrLinear = if (velocityCurve == null) VelocityCurve.linear else velocityCurve
+
   def setNotes(notes: Array[String]) {
     this.notes = notes
+    this.compiledNotes = CompiledNotes.compile(notes)
+  }
+
+  /**
+    * The notes as resolved pitches and channels, recompiled if notes was reassigned without going through setNotes.
+    */
+  def compiled: CompiledNotes = {
+    if (compiledNotes.source ne notes) {
+      compiledNotes = CompiledNotes.compile(notes)
+    }
+    compiledNotes
   }
 
   def highestNote() = {
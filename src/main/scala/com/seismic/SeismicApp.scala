@@ -1,9 +1,8 @@
 package com.seismic
 
-import com.seismic.io.Preferences
 import com.seismic.messages._
 import com.seismic.midi.StupidMonkeyMIDI
-import com.seismic.serial.{SerialMonitor, StandardSerialIO}
+import com.seismic.serial.StandardSerialIO
 import com.seismic.ui.{SeismicSerialCallbacks, SeismicUIFactory}
 import com.seismic.ui.utils.SwingThreadHelper.invokeLater
 
@@ -14,6 +13,7 @@ object SeismicApp {
 
     if (args.length < 1) {
       println("java -jar seismic.jar [serial port] [MIDI port]")
+      println("java -jar seismic.jar --headless [set list file] [serial port] [MIDI port]")
       println("Available serial ports:")
       StandardSerialIO.list().foreach { p => println(p) }
       println("\nAvailable Midi Busses:")
@@ -21,24 +21,15 @@ object SeismicApp {
       return
     }
 
-    val serialMonitor = new SerialMonitor
-    val midiIO = new StupidMonkeyMIDI("IAC Bus 2")
-    val preferences = Preferences.getPreferences
-    val triggeredState = new TriggeredState
-    val seismic = new Seismic(midiIO, preferences, triggeredState)
-    val seismicUIFactory = new SeismicUIFactory
-
-    val seismicMidiHandler = (message: Message) => {
-      message match {
-        case triggerOn: TriggerOnMessage => seismic.trigger(triggerOn)
-        case TriggerOffMessage(name) => seismic.off(name)
-        case patchMessage: PatchMessage => seismic.patch(patchMessage.patch)
-        case nextPhrase: NextPhraseMessage => seismic.selectNextPhrase()
-        case previousPhrase: PreviousPhraseMessage => seismic.selectPreviousPhrase()
-        case _ => System.out.println(s"Ignoring unknown message $message")
-      }
+    if (args(0) == "--headless") {
+      HeadlessSeismic.main(args.tail)
+      return
     }
 
+    val engine = new SeismicEngine
+    val serialMonitor = engine.serialMonitor
+    val seismicUIFactory = new SeismicUIFactory
+
     invokeLater { () =>
       val nextPhrase = () => {
         serialMonitor.fireSerialMessage(TriggerMessageParser.nextPhrase)
@@ -63,27 +54,17 @@ object SeismicApp {
                                               patch)
 
       // TODO: fuck the factory, just build the goddamned UI and don't do shit until it's (Graphics2D) loaded.
-      val seismicUI = seismicUIFactory.build(seismic, callbacks)
+      val seismicUI = seismicUIFactory.build(engine.seismic, callbacks)
 
-      val uiMessageHandler = (message: Message) => {
+      val uiMessageHandler = (event: TriggerEvent) => {
         // TODO: seismicUI.getMessageHandlers() ? seismicUI.registerHandlers(serialMonitor) ?
         // TODO: ui might go away if the UI just listens to seismic, not the actual messages from SerialMonitor
-        seismicUI.triggerMonitorUI.handleMessage(message)
+        seismicUI.triggerMonitorUI.handleEvent(event)
       }
 
-      val handlers = Array(seismicMidiHandler, uiMessageHandler)
-
-      serialMonitor.setHandler { (value: String) =>
-        try {
-          val message = TriggerMessageParser.from(value)
-          handlers.foreach { (handler) => handler(message) }
-        } catch {
-          case iae: IllegalArgumentException => iae.printStackTrace()
-        }
-      }
+      serialMonitor.addFanOutHandler(uiMessageHandler)
 
-      serialMonitor.start(args(0))
-      midiIO.addOutput(args(1))
+      engine.start(args(0), args(1))
     }
   }
 }
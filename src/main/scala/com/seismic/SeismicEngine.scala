@@ -0,0 +1,47 @@
+package com.seismic
+
+import com.seismic.io.Preferences
+import com.seismic.log.Log
+import com.seismic.messages._
+import com.seismic.metrics.TriggerLatency
+import com.seismic.midi.{MidiDeviceRegistry, MidiOutputLane, StupidMonkeyMIDI}
+import com.seismic.serial.SerialMonitor
+
+/**
+  * Everything between the serial port and the MIDI bus, with no UI: the same engine runs under SeismicApp's Swing
+  * UI or on its own in HeadlessSeismic. Nothing here may touch AWT or Swing, or headless mode would load them.
+  */
+class SeismicEngine {
+
+  MidiDeviceRegistry.scanInBackground()
+
+  val serialMonitor = new SerialMonitor
+  val midiIO = new StupidMonkeyMIDI("IAC Bus 2")
+  val preferences = Preferences.getPreferences
+  val triggeredState = new TriggeredState
+  val seismic = new Seismic(midiIO, preferences, triggeredState)
+
+  private val seismicMidiHandler = (event: TriggerEvent) => {
+    event.kind match {
+      case TriggerEvent.TriggerOn =>
+        event.midiQueuedNanos = seismic.trigger(event.triggerId, event.fingerTrigger, event.triggerValue,
+                                                event.handleValue, event.originNanos)
+      case TriggerEvent.TriggerOff => event.midiQueuedNanos = seismic.off(event.triggerId, event.originNanos)
+      case TriggerEvent.Patch => seismic.patch(event.patch)
+      case TriggerEvent.NextPhrase => seismic.selectNextPhrase()
+      case TriggerEvent.PreviousPhrase => seismic.selectPreviousPhrase()
+      case _ => Log.warn(Log.Trigger, "Ignoring unknown event %d", event.kind)
+    }
+  }
+
+  serialMonitor.setDispatchHandler(seismicMidiHandler)
+
+  Runtime.getRuntime.addShutdownHook(new Thread() {
+    override def run(): Unit = println(s"${TriggerLatency.report}\n${MidiOutputLane.report}")
+  })
+
+  def start(serialPort: String, midiOutput: String): Unit = {
+    serialMonitor.start(serialPort)
+    midiIO.addOutput(midiOutput)
+  }
+}
@@ -0,0 +1,87 @@
+package com.seismic
+
+import java.util.IdentityHashMap
+
+object SetListIndex {
+  /**
+    * Patches up to this are looked up in a table; anything higher, which nobody uses, is searched for.
+    */
+  val MaxTablePatch = 1023
+}
+
+/**
+  * Every phrase in a set list in playing order, so moving to the next or previous phrase, across songs and round
+  * from the end of the set list to the start, is a step along an array, and a patch change is a lookup in a table
+  * for the song. Phrases and songs are found by identity, never by case class equality, which would compare whole
+  * phrases.
+  *
+  * An index is built for one version of the set list's structure and never changes. When songs or phrases are
+  * added, removed, reordered or given a new patch, the set list's structureVersion moves on and a new index is
+  * built the next time one's needed.
+  */
+class SetListIndex(val setList: SetList) {
+  import SetListIndex._
+
+  val structureVersion = setList.structureVersion
+
+  private val positions = new IdentityHashMap[Phrase, Integer]()
+  private val patchTables = new IdentityHashMap[Song, Array[Phrase]]()
+
+  val phrases: Array[Phrase] = {
+    val songs = setList.songs
+    songs.flatMap { song => song.getPhrases }
+  }
+
+  phrases.indices.foreach { position => positions.put(phrases(position), position) }
+
+  setList.songs.foreach { song =>
+    val songPhrases = song.getPhrases
+    val highestPatch = if (songPhrases.isEmpty) -1 else songPhrases.map { phrase => phrase.patch }.max
+    val table = new Array[Phrase](Math.min(highestPatch, MaxTablePatch) + 1)
+    // the first phrase with a patch wins, as it always has
+    songPhrases.reverseIterator.foreach { phrase =>
+      if (phrase.patch >= 0 && phrase.patch < table.length) {
+        table(phrase.patch) = phrase
+      }
+    }
+    patchTables.put(song, table)
+  }
+
+  def isCurrent = setList.structureVersion == structureVersion
+
+  /**
+    * @return where the phrase is in playing order, or -1 if it isn't in the set list.
+    */
+  def positionOf(phrase: Phrase): Int = {
+    val position = positions.get(phrase)
+    if (position == null) -1 else position
+  }
+
+  def phraseAfter(position: Int): Option[Phrase] = phraseAt(position + 1)
+
+  def phraseBefore(position: Int): Option[Phrase] = phraseAt(position - 1)
+
+  /**
+    * The phrase with the patch in the song, if the song's in this set list and has one.
+    */
+  def phraseForPatch(song: Song, patch: Int): Option[Phrase] = {
+    val table = patchTables.get(song)
+    if (table == null || patch < 0) {
+      None
+    } else if (patch < table.length) {
+      Option(table(patch))
+    } else if (patch > MaxTablePatch) {
+      song.getPhrases.find { phrase => phrase.patch == patch }
+    } else {
+      None
+    }
+  }
+
+  private def phraseAt(position: Int): Option[Phrase] = {
+    if (phrases.isEmpty) {
+      None
+    } else {
+      Option(phrases(Math.floorMod(position, phrases.length)))
+    }
+  }
+}
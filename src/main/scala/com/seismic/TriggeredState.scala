@@ -1,14 +1,82 @@
 package com.seismic
 
+import java.util.concurrent.atomic.{AtomicLongArray, AtomicReferenceArray}
+
+import com.seismic.messages.Triggers
+
+object TriggeredState {
+
+  /**
+    * Filled in by lastTriggered: the instrument a trigger last played and the song it was played in.
+    */
+  class Last {
+    var instrument: Instrument = _
+    var song: Song = _
+  }
+}
+
+/**
+  * What each trigger last played, so its off message can release the same notes. One slot per trigger id from
+  * Triggers, written by the thread dispatching hits and readable from any thread.
+  *
+  * Each slot is a seqlock: the writer makes the slot's version odd, stores the instrument and song, and makes it even
+  * again; a reader retries until it sees the same even version before and after reading both, so it never pairs
+  * one hit's instrument with another hit's song. Nothing is allocated per hit.
+  */
 class TriggeredState {
+  import TriggeredState.Last
 
-  var lastTriggeredMap = Map[String, (Instrument, Song)]()
+  private val versions = new AtomicLongArray(Triggers.MaxTriggers)
+  private val instruments = new AtomicReferenceArray[Instrument](Triggers.MaxTriggers)
+  private val songs = new AtomicReferenceArray[Song](Triggers.MaxTriggers)
 
   def triggered(name: String, instrument: Instrument, song: Song): Unit = {
-    lastTriggeredMap = lastTriggeredMap + (name -> (instrument, song))
+    triggered(Triggers.idFor(name), instrument, song)
   }
 
-  def lastTriggered(name: String) = {
-    lastTriggeredMap.get(name)
+  /**
+    * Only ever called from one thread at a time.
+    */
+  def triggered(triggerId: Int, instrument: Instrument, song: Song): Unit = {
+    if (isTracked(triggerId)) {
+      val version = versions.get(triggerId)
+      versions.set(triggerId, version + 1)
+      instruments.set(triggerId, instrument)
+      songs.set(triggerId, song)
+      versions.set(triggerId, version + 2)
+    }
   }
+
+  /**
+    * @return false if the trigger hasn't played anything yet, leaving last untouched
+    */
+  def lastTriggered(triggerId: Int, last: Last): Boolean = {
+    if (!isTracked(triggerId)) {
+      false
+    } else {
+      var instrument: Instrument = null
+      var song: Song = null
+      var consistent = false
+      while (!consistent) {
+        val version = versions.get(triggerId)
+        instrument = instruments.get(triggerId)
+        song = songs.get(triggerId)
+        consistent = (version & 1) == 0 && versions.get(triggerId) == version
+      }
+      if (instrument == null) {
+        false
+      } else {
+        last.instrument = instrument
+        last.song = song
+        true
+      }
+    }
+  }
+
+  def lastTriggered(name: String): Option[(Instrument, Song)] = {
+    val last = new Last
+    if (lastTriggered(Triggers.idFor(name), last)) Option((last.instrument, last.song)) else None
+  }
+
+  private def isTracked(triggerId: Int) = triggerId >= 0 && triggerId < Triggers.MaxTriggers
 }
@@ -0,0 +1,120 @@
+package com.seismic
+
+import com.seismic.utils.ValueMapHelper.map
+
+object VelocityCurve {
+  val Linear = "linear"
+  val Log = "log"
+  val Exp = "exp"
+  val SCurve = "s-curve"
+  val Breakpoints = "breakpoints"
+
+  val kinds = Array(Linear, Log, Exp, SCurve, Breakpoints)
+
+  /**
+    * The steepness for log, exp and s-curve when none is given; set list json that leaves shape out reads it as 0.
+    */
+  val DefaultShape = 4d
+
+  val linear = VelocityCurve()
+
+  /**
+    * Trigger values from 0 up to this are looked up; anything outside, which the trigger board never sends, is
+    * worked out.
+    */
+  val TableSize = 1024
+}
+
+/**
+  * How hard a hit has to be for each velocity. Every curve runs from silence at a trigger value of 0 to full
+  * velocity at the bank's threshold, and stays at full velocity above it; they differ in between:
+  *
+  *   linear       velocity in proportion to the trigger value, as it always was.
+  *   log          loud quickly, for soft players: the steeper the shape, the sooner.
+  *   exp          quiet until hit hard: the steeper the shape, the longer it stays quiet.
+  *   s-curve      quiet soft hits and even hard ones, with the dynamics in the middle. shape is the steepness.
+  *   breakpoints  points as (linear velocity, velocity) pairs, each 0 to 127, joined by straight lines and flat
+  *                past the first and last points. So (0, 20, 127, 100) squeezes everything between 20 and 100.
+  *
+  * Set list json can leave any field out, which jackson reads as null or 0 rather than the defaults here, so the
+  * constructor fills them in: a missing kind is linear, a shape that isn't above 0 is DefaultShape and missing points
+  * are none. They're never changed after that.
+  */
+case class VelocityCurve(var kind: String = VelocityCurve.Linear,
+                         var shape: Double = VelocityCurve.DefaultShape,
+                         var points: Array[Int] = Array.empty) {
+  import VelocityCurve._
+
+  if (kind == null) kind = Linear
+  if (!(shape > 0)) shape = DefaultShape
+  if (points == null) points = Array.empty
+
+  require(kinds.contains(kind), s"Unknown velocity curve $kind, expected one of ${kinds.mkString(", ")}")
+  require(kind != Breakpoints || (points.length >= 2 && points.length % 2 == 0),
+          "Breakpoints need at least one (linear velocity, velocity) pair")
+
+  def velocityFor(value: Int, threshold: Int): Int = {
+    if (kind == Linear) {
+      val mappedValue = map(value, 0, threshold, 0, 127)
+      Math.max(Math.min(mappedValue, 127), 0).toInt
+    } else if (threshold <= 0) {
+      if (value > 0) 127 else 0
+    } else {
+      val x = Math.max(0d, Math.min(value.toDouble / threshold, 1d))
+      Math.max(0, Math.min((curve(x) * 127).toInt, 127))
+    }
+  }
+
+  /**
+    * Velocities for every trigger value in the table, for the threshold.
+    */
+  def table(threshold: Int): Array[Byte] = {
+    Array.tabulate(TableSize) { value => velocityFor(value, threshold).toByte }
+  }
+
+  private def curve(x: Double): Double = {
+    kind match {
+      case Log => Math.log1p(shape * x) / Math.log1p(shape)
+      case Exp => Math.expm1(shape * x) / Math.expm1(shape)
+      case SCurve =>
+        val low = logistic(0)
+        (logistic(x) - low) / (logistic(1) - low)
+      case Breakpoints => breakpoint(x * 127) / 127
+      case _ => x
+    }
+  }
+
+  private def logistic(x: Double) = 1 / (1 + Math.exp(-shape * (x - .5)))
+
+  private def breakpoint(linearVelocity: Double): Double = {
+    if (linearVelocity <= points(0)) {
+      points(1)
+    } else {
+      var i = 2
+      while (i < points.length && points(i) < linearVelocity) {
+        i += 2
+      }
+      if (i >= points.length) {
+        points(points.length - 1)
+      } else {
+        val fromX = points(i - 2)
+        val fromY = points(i - 1)
+        val toX = points(i)
+        val toY = points(i + 1)
+        if (toX == fromX) toY else fromY + (toY - fromY) * (linearVelocity - fromX) / (toX - fromX)
+      }
+    }
+  }
+}
+
+/**
+  * A curve's velocities for one threshold, made when an instrument is first hit and again whenever its curve or its
+  * bank's threshold changes.
+  */
+class VelocityTable(val curve: VelocityCurve, val threshold: Int) {
+  val velocities = curve.table(threshold)
+
+  def velocityFor(value: Int): Int = {
+    if (value >= 0 && value < velocities.length) velocities(value) else curve.velocityFor(value, threshold)
+  }
+}
@@ -0,0 +1,38 @@
+package com.seismic.io
+
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardCopyOption.{ATOMIC_MOVE, REPLACE_EXISTING}
+import java.nio.file.StandardOpenOption.{CREATE, TRUNCATE_EXISTING, WRITE}
+import java.nio.file.{AtomicMoveNotSupportedException, Files}
+
+/**
+  * Replaces a file's contents all at once: the bytes go to a temporary file next to it, are forced to disk, and the
+  * temporary file is renamed over the original. Anyone reading the file, or starting up after a crash, sees either
+  * the old contents or the new, never half of each.
+  */
+object AtomicFile {
+
+  def write(file: File, bytes: Array[Byte]): Unit = {
+    val target = file.getAbsoluteFile.toPath
+    val temp = target.resolveSibling(s".${target.getFileName}.tmp")
+
+    val channel = FileChannel.open(temp, CREATE, TRUNCATE_EXISTING, WRITE)
+    try {
+      val buffer = ByteBuffer.wrap(bytes)
+      while (buffer.hasRemaining) {
+        channel.write(buffer)
+      }
+      channel.force(true)
+    } finally {
+      channel.close()
+    }
+
+    try {
+      Files.move(temp, target, ATOMIC_MOVE, REPLACE_EXISTING)
+    } catch {
+      case e: AtomicMoveNotSupportedException => Files.move(temp, target, REPLACE_EXISTING)
+    }
+  }
+}
@@ -10,6 +10,16 @@ object Preferences {
   private val preferencesFile = new File(homeDir, ".seismic.json")
   private var preferencesOpt: Option[Preferences] = None
 
+  /**
+    * Thresholds and calibration get nudged over and over during a soundcheck, so changes are written at most once a
+    * second, in the background, with whatever's latest then. Each save copies the preferences, which is all the
+    * snapshot needs.
+    */
+  private val writer = new WriteBehind[Preferences, Preferences]("preferences", 1000,
+                                                                 (preferences) => preferencesFile,
+                                                                 (preferences) => preferences.snapshot,
+                                                                 (file, preferences) => objectMapper.writeValueAsBytes(preferences))
+
   private def buildPreferences() = {
     if ( ! preferencesFile.exists()) {
       val preferences = Preferences(homeDir)
@@ -44,9 +54,14 @@ case class Preferences(var lastSetListDir: String,
   }
 
   def save() {
-    objectMapper.writeValue(Preferences.preferencesFile, this)
+    Preferences.writer.save(this)
   }
 
+  /**
+    * A copy that shares nothing mutable with this one.
+    */
+  def snapshot = copy(handleCalibration = handleCalibration.copy(), triggerThresholds = triggerThresholds.copy())
+
   def setLastSetListDirFromFile(lastSetListFile: File): Unit = {
     this.lastSetListDir = lastSetListFile.getParentFile.getAbsolutePath
     save()
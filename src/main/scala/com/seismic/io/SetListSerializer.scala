@@ -1,23 +1,74 @@
 package com.seismic.io
 
-import java.io.File
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, File}
+import javax.swing.SwingUtilities
+
 import com.seismic.io.Preferences.getPreferences
 import com.seismic.io.ObjectMapperFactory.objectMapper
 import com.seismic.SetList
 
 object SetListSerializer {
 
+  /**
+    * Set lists are saved half a second after they're changed. They're only ever changed on the Swing thread, which
+    * takes a binary snapshot once that half second is up, however many edits there were, rather than on every edit;
+    * it's still a pass over the whole set list. A set list opened from a snapshot is saved as exactly that; turning
+    * it into JSON for anything else happens on the writer.
+    */
+  private val autosave = new WriteBehind[SetList, Array[Byte]]("setlist", 500, fileFor, snapshot, (file, bytes) => {
+    if (SetListSnapshot.isSnapshot(file)) {
+      bytes
+    } else {
+      objectMapper.writeValueAsBytes(SetListSnapshot.read(new ByteArrayInputStream(bytes)))
+    }
+  })
+
   def main(args: Array[String]): Unit = {
     val setList = read(new File(Preferences.getPreferences.lastSetListDir, "Test.json"))
     println(setList.songs.head.setList)
   }
 
   def write(setList: SetList): Unit = {
-    objectMapper.writeValue(new File(f"${setList.name}.json"), setList)
+    autosave.saveCoalesced(setList, onSwingThread)
+  }
+
+  /**
+    * Writes any set list still waiting to be saved, before returning.
+    */
+  def flush(): Unit = {
+    autosave.flush()
+  }
+
+  /**
+    * Where the set list was opened from, in the same format, or <name>.json in the working directory for one that
+    * wasn't opened from a file.
+    */
+  def fileFor(setList: SetList) = Option(setList.file).getOrElse(new File(f"${setList.name}.json"))
+
+  private def onSwingThread(f: () => Unit): Unit = {
+    SwingUtilities.invokeLater(new Runnable {
+      override def run(): Unit = f()
+    })
+  }
+
+  private def snapshot(setList: SetList) = {
+    val out = new ByteArrayOutputStream()
+    SetListSnapshot.write(setList, out)
+    out.toByteArray
   }
 
+  /**
+    * Reads JSON, or a binary SetListSnapshot if the file ends in .seis. Changes are saved back to the same file in the
+    * same format.
+    */
   def read(file: File) = {
     getPreferences.setLastSetListDirFromFile(file)
-    objectMapper.readValue(file, classOf[SetList])
+    val setList = if (SetListSnapshot.isSnapshot(file)) {
+      SetListSnapshot.read(file)
+    } else {
+      objectMapper.readValue(file, classOf[SetList])
+    }
+    setList.file = file
+    setList
   }
 }
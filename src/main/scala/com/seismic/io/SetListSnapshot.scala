@@ -0,0 +1,208 @@
+package com.seismic.io
+
+import java.io._
+
+import com.seismic.io.ObjectMapperFactory.objectMapper
+import com.seismic.{Instrument, InstrumentBank, Phrase, SetList, Song, VelocityCurve}
+
+/**
+  * A compact binary form of a set list that reads several times faster than the JSON, for big libraries. It holds
+  * the same model as the JSON and nothing else, so the two convert back and forth without losing anything:
+  *
+  *   java -cp seismic.jar com.seismic.io.SetListSnapshot Gig.json Gig.seis
+  *   java -cp seismic.jar com.seismic.io.SetListSnapshot Gig.seis Gig.json
+  *
+  * The file is the magic "SEIS", a format version, then the set list depth first: each song, its phrases, their
+  * instrument banks, their instruments' notes and velocity curves and the banks' zone weights, every list preceded
+  * by its length. Strings are modified UTF-8 as written by DataOutput. A reader accepts any version up to its own; a
+  * new version only ever adds to the end of a record, so older files read with the new fields left at their
+  * defaults.
+  */
+object SetListSnapshot {
+  val Extension = ".seis"
+  val Magic = 0x53454953 // SEIS
+  /**
+    * 1: the set list as it first was. 2: each instrument's velocity curve follows its notes. 3: each bank's zone
+    * weights follow its instruments, -1 for none.
+    */
+  val Version = 3
+
+  def main(args: Array[String]): Unit = {
+    if (args.length < 2) {
+      println(s"SetListSnapshot [from.json|from$Extension] [to$Extension|to.json]")
+      return
+    }
+    val from = new File(args(0))
+    val to = new File(args(1))
+    val setList = if (isSnapshot(from)) read(from) else objectMapper.readValue(from, classOf[SetList])
+    if (isSnapshot(to)) write(setList, to) else objectMapper.writeValue(to, setList)
+  }
+
+  def isSnapshot(file: File) = file.getName.endsWith(Extension)
+
+  def write(setList: SetList, file: File): Unit = {
+    val out = new FileOutputStream(file)
+    try {
+      write(setList, out)
+    } finally {
+      out.close()
+    }
+  }
+
+  def write(setList: SetList, out: OutputStream): Unit = {
+    val data = new DataOutputStream(new BufferedOutputStream(out, 65536))
+    data.writeInt(Magic)
+    data.writeShort(Version)
+    data.writeUTF(setList.name)
+    data.writeInt(setList.songs.length)
+    setList.songs.foreach { song => writeSong(song, data) }
+    data.flush()
+  }
+
+  def read(file: File): SetList = {
+    val in = new FileInputStream(file)
+    try {
+      read(in)
+    } finally {
+      in.close()
+    }
+  }
+
+  def read(in: InputStream): SetList = {
+    val data = new DataInputStream(new BufferedInputStream(in, 65536))
+    if (data.readInt() != Magic) {
+      throw new IOException("Not a set list snapshot")
+    }
+    val version = data.readShort()
+    if (version < 1 || version > Version) {
+      throw new IOException(s"Can't read set list snapshot version $version, only up to $Version")
+    }
+
+    val setList = SetList(data.readUTF())
+    val songs = new Array[Song](data.readInt())
+    var i = 0
+    while (i < songs.length) {
+      val song = readSong(data, version)
+      song.setList = setList
+      songs(i) = song
+      i += 1
+    }
+    setList.songs = songs
+    setList
+  }
+
+  private def writeSong(song: Song, data: DataOutputStream): Unit = {
+    data.writeUTF(song.name)
+    data.writeInt(song.channel)
+    val phrases = song.getPhrases
+    data.writeInt(phrases.length)
+    phrases.foreach { phrase => writePhrase(phrase, data) }
+  }
+
+  private def writePhrase(phrase: Phrase, data: DataOutputStream): Unit = {
+    data.writeUTF(phrase.name)
+    data.writeInt(phrase.patch)
+    val banks = phrase.getInstrumentBanks
+    data.writeInt(banks.length)
+    banks.foreach { bank =>
+      data.writeUTF(bank.name)
+      val instruments = bank.getInstruments
+      data.writeInt(instruments.length)
+      instruments.foreach { instrument => writeInstrument(instrument, data) }
+      val zoneWeights = bank.getZoneWeights
+      if (zoneWeights == null) {
+        data.writeInt(-1)
+      } else {
+        data.writeInt(zoneWeights.length)
+        zoneWeights.foreach { weight => data.writeInt(weight) }
+      }
+    }
+  }
+
+  private def writeInstrument(instrument: Instrument, data: DataOutputStream): Unit = {
+    data.writeInt(instrument.notes.length)
+    instrument.notes.foreach { note => data.writeUTF(note) }
+    val curve = Option(instrument.velocityCurve).getOrElse(VelocityCurve.linear)
+    data.writeUTF(curve.kind)
+    data.writeDouble(curve.shape)
+    data.writeInt(curve.points.length)
+    curve.points.foreach { point => data.writeInt(point) }
+  }
+
+  private def readSong(data: DataInputStream, version: Int) = {
+    val song = Song(data.readUTF(), data.readInt())
+    val phrases = new Array[Phrase](data.readInt())
+    var i = 0
+    while (i < phrases.length) {
+      phrases(i) = readPhrase(data, version)
+      i += 1
+    }
+    song.setPhrases(phrases)
+    song
+  }
+
+  private def readPhrase(data: DataInputStream, version: Int) = {
+    val phrase = Phrase(data.readUTF(), data.readInt())
+    val banks = new Array[InstrumentBank](data.readInt())
+    var i = 0
+    while (i < banks.length) {
+      val bank = InstrumentBank(data.readUTF())
+      val instruments = new Array[Instrument](data.readInt())
+      var j = 0
+      while (j < instruments.length) {
+        instruments(j) = readInstrument(data, version)
+        j += 1
+      }
+      bank.setInstruments(instruments)
+      if (version >= 3) {
+        bank.setZoneWeights(readZoneWeights(data))
+      }
+      bank.phrase = phrase
+      banks(i) = bank
+      i += 1
+    }
+    phrase.setInstrumentBanks(banks)
+    phrase
+  }
+
+  private def readInstrument(data: DataInputStream, version: Int) = {
+    val notes = new Array[String](data.readInt())
+    var i = 0
+    while (i < notes.length) {
+      notes(i) = data.readUTF()
+      i += 1
+    }
+    if (version >= 2) {
+      Instrument(notes, readVelocityCurve(data))
+    } else {
+      Instrument(notes)
+    }
+  }
+
+  private def readZoneWeights(data: DataInputStream) = {
+    val length = data.readInt()
+    if (length < 0) {
+      null
+    } else {
+      val weights = new Array[Int](length)
+      var i = 0
+      while (i < weights.length) {
+        weights(i) = data.readInt()
+        i += 1
+      }
+      weights
+    }
+  }
+
+  private def readVelocityCurve(data: DataInputStream) = {
+    val kind = data.readUTF()
+    val shape = data.readDouble()
+    val points = new Array[Int](data.readInt())
+    var i = 0
+    while (i < points.length) {
+      points(i) = data.readInt()
+      i += 1
+    }
+    if (kind == VelocityCurve.Linear) VelocityCurve.linear else VelocityCurve(kind, shape, points)
+  }
+}
@@ -0,0 +1,111 @@
+package com.seismic.io
+
+import java.io.File
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{ConcurrentHashMap, Executors, ThreadFactory, TimeUnit}
+
+import com.seismic.log.Log
+
+/**
+  * Saves something to a file in the background. save takes a snapshot of the value on the calling thread, the one
+  * that changes it, and returns; at most delayMillis later the snapshot is serialized, in whatever form suits the
+  * file, and written with AtomicFile on the writer's own thread. However many times save is called for a file in
+  * that time, the file is written once, with the latest snapshot.
+  *
+  * Because the snapshot is taken where the value is changed, what's written is always the value as it was at some
+  * call to save, never a mix of that and changes made while it was being serialized. Snapshots wait for each file
+  * separately, so saving one value doesn't replace another's unwritten save. Anything not yet written is written
+  * when the JVM shuts down, or on flush.
+  *
+  * For values too big to snapshot on every change, saveCoalesced only notes the value; once the delay is up the
+  * snapshot is taken on the owner thread, the one that changes the value, once for however many saves there were.
+  */
+class WriteBehind[T <: AnyRef, S <: AnyRef](name: String,
+                                            delayMillis: Long,
+                                            file: (T) => File,
+                                            snapshot: (T) => S,
+                                            serialize: (File, S) => Array[Byte]) {
+
+  private val pending = new ConcurrentHashMap[File, S]
+  private val scheduled = new AtomicBoolean
+  private val waiting = new ConcurrentHashMap[File, T]
+  private val snapshotScheduled = new AtomicBoolean
+  private val executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val thread = new Thread(r, s"seismic-$name-writer")
+      thread.setDaemon(true)
+      thread
+    }
+  })
+  private val writePendingTask = new Runnable {
+    override def run(): Unit = writePending()
+  }
+
+  Runtime.getRuntime.addShutdownHook(new Thread() {
+    override def run(): Unit = flush()
+  })
+
+  def save(value: T): Unit = {
+    pending.put(file(value), snapshot(value))
+    if (scheduled.compareAndSet(false, true)) {
+      executor.schedule(writePendingTask, delayMillis, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  /**
+    * Saves the value without snapshotting it yet: delayMillis later owner is asked to run the snapshot of every value
+    * waiting like this, and they're written straight after.
+    *
+    * @param owner runs a function on the thread that changes the value, e.g. SwingUtilities.invokeLater.
+    */
+  def saveCoalesced(value: T, owner: (() => Unit) => Unit): Unit = {
+    waiting.put(file(value), value)
+    if (snapshotScheduled.compareAndSet(false, true)) {
+      executor.schedule(new Runnable {
+        override def run(): Unit = owner { () =>
+          snapshotWaiting()
+          executor.execute(writePendingTask)
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  /**
+    * Writes anything waiting to be written now, on the calling thread. Values from saveCoalesced that haven't been
+    * snapshotted yet are snapshotted here too.
+    */
+  def flush(): Unit = {
+    snapshotWaiting()
+    writePending()
+  }
+
+  private def snapshotWaiting(): Unit = {
+    snapshotScheduled.set(false)
+    val files = waiting.keySet.iterator
+    while (files.hasNext) {
+      val target = files.next()
+      val value = waiting.remove(target)
+      if (value != null) {
+        pending.put(target, snapshot(value))
+      }
+    }
+  }
+
+  private def writePending(): Unit = synchronized {
+    scheduled.set(false)
+    while (!pending.isEmpty) {
+      val files = pending.keySet.iterator
+      while (files.hasNext) {
+        val target = files.next()
+        val value = pending.remove(target)
+        if (value != null) {
+          try {
+            AtomicFile.write(target, serialize(target, value))
+          } catch {
+            case e: Exception => Log.error(Log.General, "Couldn't save %s", target, e)
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.seismic.log
+
+import java.util.concurrent.atomic.{AtomicIntegerArray, AtomicLong, AtomicLongArray}
+
+import com.seismic.queue.{RingBuffer, RingBufferStage, WaitStrategy}
+
+/**
+  * Diagnostic logging that's safe to call from the trigger and MIDI send paths. A call checks the category's level
+  * and rate limit, copies its format string and numbers into a preallocated LogRecord and returns; formatting and
+  * console I/O happen on a background thread. If the ring is full the record is dropped and counted rather than
+  * making the caller wait.
+  *
+  * Levels are set per category, at startup with -Dseismic.log=debug or -Dseismic.log.midi=debug, or at runtime with
+  * setLevel. Each category gets seismic.log.rate records a second (default 50); the rest are counted and reported.
+  */
+object Log {
+  final val Debug = 0
+  final val Info = 1
+  final val Warn = 2
+  final val Error = 3
+  final val Off = 4
+  val levelNames = Array("debug", "info", "warn", "error", "off")
+
+  final val General = 0
+  final val Midi = 1
+  final val Serial = 2
+  final val Trigger = 3
+  final val Phrase = 4
+  val categoryNames = Array("general", "midi", "serial", "trigger", "phrase")
+
+  private val RingSize = 4096
+  private val WindowNanos = 1000000000L
+
+  private val levels = new AtomicIntegerArray(categoryNames.length)
+  private val ratePerSecond = Integer.getInteger("seismic.log.rate", 50).intValue
+  private val windowStarts = new AtomicLongArray(categoryNames.length)
+  private val windowCounts = new AtomicIntegerArray(categoryNames.length)
+  private val suppressed = new AtomicLongArray(categoryNames.length)
+  private val dropped = new AtomicLong()
+  private val droppedSinceReport = new AtomicLong()
+
+  private val ring = new RingBuffer[LogRecord](RingSize, () => new LogRecord, WaitStrategy.Parking())
+  private val drain = new RingBufferStage[LogRecord]("log", ring, None, WaitStrategy.Parking(1000000), write)
+
+  for (category <- categoryNames.indices) {
+    val defaultLevel = System.getProperty("seismic.log", "info")
+    levels.set(category, levelNamed(System.getProperty(s"seismic.log.${categoryNames(category)}", defaultLevel)))
+    // nanoTime can be anything, even negative, so each window starts a whole window ago rather than at 0
+    windowStarts.set(category, System.nanoTime() - WindowNanos)
+  }
+  drain.start()
+
+  def setLevel(category: Int, level: Int): Unit = {
+    levels.set(category, level)
+  }
+
+  def setLevel(level: Int): Unit = {
+    for (category <- categoryNames.indices) {
+      setLevel(category, level)
+    }
+  }
+
+  def level(category: Int) = levels.get(category)
+
+  def isEnabled(level: Int, category: Int) = level >= levels.get(category)
+
+  def levelNamed(name: String): Int = {
+    val level = levelNames.indexOf(name.toLowerCase)
+    if (level < 0) {
+      throw new IllegalArgumentException(s"Unknown log level $name, expected one of ${levelNames.mkString(", ")}")
+    }
+    level
+  }
+
+  /**
+    * Records dropped because the drain thread fell a whole ring behind.
+    */
+  def droppedCount = dropped.get
+
+  def debug(category: Int, format: String): Unit = log(Debug, category, format, null, null, 0, 0, 0, 0)
+  def debug(category: Int, format: String, a: Long): Unit = log(Debug, category, format, null, null, 1, a, 0, 0)
+  def debug(category: Int, format: String, a: Long, b: Long): Unit = log(Debug, category, format, null, null, 2, a, b, 0)
+  def debug(category: Int, format: String, a: Long, b: Long, c: Long): Unit = log(Debug, category, format, null, null, 3, a, b, c)
+
+  def info(category: Int, format: String): Unit = log(Info, category, format, null, null, 0, 0, 0, 0)
+  def info(category: Int, format: String, a: Long): Unit = log(Info, category, format, null, null, 1, a, 0, 0)
+  def info(category: Int, format: String, a: Long, b: Long): Unit = log(Info, category, format, null, null, 2, a, b, 0)
+  def info(category: Int, format: String, a: Long, b: Long, c: Long): Unit = log(Info, category, format, null, null, 3, a, b, c)
+  def info(category: Int, format: String, subject: AnyRef): Unit = log(Info, category, format, subject, null, 0, 0, 0, 0)
+
+  def warn(category: Int, format: String): Unit = log(Warn, category, format, null, null, 0, 0, 0, 0)
+  def warn(category: Int, format: String, a: Long): Unit = log(Warn, category, format, null, null, 1, a, 0, 0)
+  def warn(category: Int, format: String, a: Long, b: Long): Unit = log(Warn, category, format, null, null, 2, a, b, 0)
+  def warn(category: Int, format: String, a: Long, b: Long, c: Long): Unit = log(Warn, category, format, null, null, 3, a, b, c)
+  def warn(category: Int, format: String, subject: AnyRef): Unit = log(Warn, category, format, subject, null, 0, 0, 0, 0)
+  def warn(category: Int, format: String, subject: AnyRef, a: Long): Unit = log(Warn, category, format, subject, null, 1, a, 0, 0)
+
+  def error(category: Int, format: String, throwable: Throwable): Unit = log(Error, category, format, null, throwable, 0, 0, 0, 0)
+  def error(category: Int, format: String, subject: AnyRef, throwable: Throwable): Unit = log(Error, category, format, subject, throwable, 0, 0, 0, 0)
+  def error(category: Int, format: String, a: Long, b: Long, throwable: Throwable): Unit = log(Error, category, format, null, throwable, 2, a, b, 0)
+
+  private def log(level: Int, category: Int, format: String, subject: AnyRef, throwable: Throwable,
+                  argCount: Int, a: Long, b: Long, c: Long): Unit = {
+    if (isEnabled(level, category) && withinRate(category)) {
+      append(level, category, format, subject, throwable, argCount, a, b, c)
+    }
+  }
+
+  private def append(level: Int, category: Int, format: String, subject: AnyRef, throwable: Throwable,
+                     argCount: Int, a: Long, b: Long, c: Long): Unit = {
+    val sequence = ring.tryNext()
+    if (sequence < 0) {
+      dropped.incrementAndGet()
+      droppedSinceReport.incrementAndGet()
+    } else {
+      val record = ring.get(sequence)
+      record.set(level, category, format, subject, throwable)
+      if (argCount > 0) record.addArg(a)
+      if (argCount > 1) record.addArg(b)
+      if (argCount > 2) record.addArg(c)
+      ring.publish(sequence)
+    }
+  }
+
+  /**
+    * Whoever rolls a category over into a new one-second window also reports what the last window suppressed.
+    */
+  private def withinRate(category: Int): Boolean = {
+    val now = System.nanoTime()
+    val windowStart = windowStarts.get(category)
+    if (now - windowStart >= WindowNanos && windowStarts.compareAndSet(category, windowStart, now)) {
+      windowCounts.set(category, 0)
+      val suppressedCount = suppressed.getAndSet(category, 0)
+      if (suppressedCount > 0) {
+        append(Warn, category, "Suppressed %d messages over the rate limit", null, null, 1, suppressedCount, 0, 0)
+      }
+    }
+    if (windowCounts.incrementAndGet(category) > ratePerSecond) {
+      suppressed.incrementAndGet(category)
+      false
+    } else {
+      true
+    }
+  }
+
+  private def write(record: LogRecord): Unit = {
+    val out = if (record.level >= Warn) System.err else System.out
+    out.println(s"[${levelNames(record.level)}] ${categoryNames(record.category)}: ${record.message}")
+    if (record.throwable != null) {
+      record.throwable.printStackTrace(out)
+    }
+    record.clear()
+
+    val droppedCount = droppedSinceReport.getAndSet(0)
+    if (droppedCount > 0) {
+      System.err.println(s"[warn] general: Dropped $droppedCount log messages, the log ring was full")
+    }
+  }
+}
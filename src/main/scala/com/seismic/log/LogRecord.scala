@@ -0,0 +1,59 @@
+package com.seismic.log
+
+/**
+  * A slot in Log's ring. Holds what's needed to format a message later, on the drain thread: a constant format
+  * string, up to four numbers, and optionally one object (formatted before the numbers) and a throwable.
+  */
+class LogRecord {
+  var level = 0
+  var category = 0
+  var format: String = _
+  var argCount = 0
+  val args = new Array[Long](LogRecord.MaxArgs)
+  var subject: AnyRef = _
+  var throwable: Throwable = _
+
+  def set(level: Int, category: Int, format: String, subject: AnyRef, throwable: Throwable): Unit = {
+    this.level = level
+    this.category = category
+    this.format = format
+    this.subject = subject
+    this.throwable = throwable
+    argCount = 0
+  }
+
+  def addArg(value: Long): Unit = {
+    args(argCount) = value
+    argCount += 1
+  }
+
+  def message: String = {
+    val formatArgs = new Array[AnyRef](argCount + (if (subject != null) 1 else 0))
+    var i = 0
+    if (subject != null) {
+      formatArgs(0) = String.valueOf(subject)
+      i = 1
+    }
+    for (arg <- 0 until argCount) {
+      formatArgs(i + arg) = java.lang.Long.valueOf(args(arg))
+    }
+    try {
+      String.format(format, formatArgs: _*)
+    } catch {
+      case e: java.util.IllegalFormatException => s"$format ${formatArgs.mkString(" ")}"
+    }
+  }
+
+  /**
+    * Lets go of the subject and throwable once written so the ring doesn't keep them alive.
+    */
+  def clear(): Unit = {
+    subject = null
+    throwable = null
+    format = null
+  }
+}
+
+object LogRecord {
+  val MaxArgs = 4
+}
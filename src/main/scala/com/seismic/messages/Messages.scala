@@ -1,7 +1,9 @@
 package com.seismic.messages
 
 trait Message
-case class TriggerOnMessage(name: String, triggerValue: Int, handleValue: Int, fingerTrigger: Boolean) extends Message
+case class TriggerOnMessage(name: String, triggerValue: Int, handleValue: Int, fingerTrigger: Boolean) extends Message {
+  val triggerId = Triggers.idFor(name)
+}
 case class TriggerOffMessage(name: String) extends Message
 case class PatchMessage(patch: Int) extends Message
 case class NextPhraseMessage() extends Message
@@ -0,0 +1,61 @@
+package com.seismic.messages
+
+object TriggerEvent {
+  final val Invalid = 0
+  final val TriggerOn = 1
+  final val TriggerOff = 2
+  final val Patch = 3
+  final val NextPhrase = 4
+  final val PreviousPhrase = 5
+}
+
+/**
+  * A reusable, mutable version of a Message, filled in place by TriggerFrameParser so that parsing a serial
+  * frame doesn't allocate. Only the fields for the current kind are meaningful.
+  */
+class TriggerEvent {
+  import TriggerEvent._
+
+  var kind = Invalid
+  var triggerId = Triggers.Unknown
+  var triggerValue = 0
+  var handleValue = 0
+  var fingerTrigger = false
+  var patch = 0
+  /**
+    * System.nanoTime the bytes for this event arrived at the serial port, or 0 if unknown.
+    */
+  var originNanos = 0L
+  /**
+    * System.nanoTime the dispatch handler finished queueing this event's notes on the MIDI output, or 0 if it sent
+    * none.
+    */
+  var midiQueuedNanos = 0L
+
+  def reset(): Unit = {
+    kind = Invalid
+    triggerId = Triggers.Unknown
+    triggerValue = 0
+    handleValue = 0
+    fingerTrigger = false
+    patch = 0
+    originNanos = 0
+    midiQueuedNanos = 0
+  }
+
+  def isValid = kind != Invalid
+
+  /**
+    * Builds the equivalent immutable Message for the handlers that still want one, like the UI. This allocates.
+    */
+  def toMessage: Message = {
+    kind match {
+      case TriggerOn => TriggerOnMessage(Triggers.nameFor(triggerId), triggerValue, handleValue, fingerTrigger)
+      case TriggerOff => TriggerOffMessage(Triggers.nameFor(triggerId))
+      case Patch => PatchMessage(patch)
+      case NextPhrase => NextPhraseMessage()
+      case PreviousPhrase => PreviousPhraseMessage()
+      case _ => throw new IllegalStateException("Can't make a message from an invalid event")
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.seismic.messages
+
+import java.nio.charset.StandardCharsets.US_ASCII
+
+/**
+  * Parses the same protocol as TriggerMessageParser, but straight from the serial bytes into a reusable
+  * TriggerEvent. Nothing is allocated unless a trigger name shows up that Triggers has never seen.
+  *
+  * Trigger On:   "T,ON,KICK,203,152,0"
+  * Trigger Off:  "T,OFF,KICK"
+  * Patch:        "PATCH,7"
+  * Phrase Prev:  "PHRASE,PREV"
+  * Phrase Next:  "PHRASE,NEXT"
+  */
+object TriggerFrameParser {
+  private val Comma = ','.toByte
+  private val InvalidNumber = Int.MinValue
+
+  private val T = bytes("T")
+  private val On = bytes("ON")
+  private val Off = bytes("OFF")
+  private val PatchName = bytes("PATCH")
+  private val PhraseName = bytes("PHRASE")
+  private val Next = bytes("NEXT")
+  private val Prev = bytes("PREV")
+
+  /**
+    * @return true if bytes(offset until offset + length) held a valid message, which is now in event.
+    */
+  def parse(bytes: Array[Byte], offset: Int, length: Int, event: TriggerEvent): Boolean = {
+    event.reset()
+
+    var start = offset
+    var end = offset + length
+    while (start < end && isWhitespace(bytes(start))) start += 1
+    while (end > start && isWhitespace(bytes(end - 1))) end -= 1
+
+    val typeEnd = fieldEnd(bytes, start, end)
+    if (typeEnd == end) {
+      false
+    } else if (matches(T, bytes, start, typeEnd)) {
+      parseTrigger(bytes, typeEnd + 1, end, event)
+    } else if (matches(PatchName, bytes, start, typeEnd)) {
+      parsePatch(bytes, typeEnd + 1, end, event)
+    } else if (matches(PhraseName, bytes, start, typeEnd)) {
+      parsePhrase(bytes, typeEnd + 1, end, event)
+    } else {
+      false
+    }
+  }
+
+  /**
+    * Trigger On:   "ON,KICK,203,152,0"
+    * Trigger Off:  "OFF,KICK"
+    * The finger value is optional and defaults to off.
+    */
+  private def parseTrigger(bytes: Array[Byte], start: Int, end: Int, event: TriggerEvent): Boolean = {
+    val onOffEnd = fieldEnd(bytes, start, end)
+    val nameStart = onOffEnd + 1
+    val nameEnd = fieldEnd(bytes, nameStart, end)
+    if (onOffEnd == end || nameEnd == nameStart) {
+      return false
+    }
+
+    event.triggerId = Triggers.idFor(bytes, nameStart, nameEnd)
+    if (event.triggerId == Triggers.Unknown) {
+      return false
+    }
+
+    if (matches(Off, bytes, start, onOffEnd)) {
+      event.kind = TriggerEvent.TriggerOff
+      true
+    } else if (matches(On, bytes, start, onOffEnd)) {
+      val triggerEnd = fieldEnd(bytes, nameEnd + 1, end)
+      val handleEnd = fieldEnd(bytes, triggerEnd + 1, end)
+      val fingerEnd = fieldEnd(bytes, handleEnd + 1, end)
+
+      event.triggerValue = parseInt(bytes, nameEnd + 1, triggerEnd)
+      event.handleValue = parseInt(bytes, triggerEnd + 1, handleEnd)
+      event.fingerTrigger = handleEnd < end && parseInt(bytes, handleEnd + 1, fingerEnd) == 1
+
+      if (event.triggerValue == InvalidNumber || event.handleValue == InvalidNumber) {
+        false
+      } else {
+        event.kind = TriggerEvent.TriggerOn
+        true
+      }
+    } else {
+      false
+    }
+  }
+
+  /**
+    * Patch:        "7"
+    */
+  private def parsePatch(bytes: Array[Byte], start: Int, end: Int, event: TriggerEvent): Boolean = {
+    event.patch = parseInt(bytes, start, end)
+    if (event.patch == InvalidNumber) {
+      false
+    } else {
+      event.kind = TriggerEvent.Patch
+      true
+    }
+  }
+
+  /**
+    * Phrase Prev:  "PREV"
+    * Phrase Next:  "NEXT"
+    */
+  private def parsePhrase(bytes: Array[Byte], start: Int, end: Int, event: TriggerEvent): Boolean = {
+    if (matches(Next, bytes, start, end)) {
+      event.kind = TriggerEvent.NextPhrase
+      true
+    } else if (matches(Prev, bytes, start, end)) {
+      event.kind = TriggerEvent.PreviousPhrase
+      true
+    } else {
+      false
+    }
+  }
+
+  private def fieldEnd(bytes: Array[Byte], start: Int, end: Int) = {
+    var i = start
+    while (i < end && bytes(i) != Comma) i += 1
+    i
+  }
+
+  private def parseInt(bytes: Array[Byte], start: Int, end: Int): Int = {
+    if (start >= end) {
+      return InvalidNumber
+    }
+    val negative = bytes(start) == '-'
+    var i = if (negative) start + 1 else start
+    if (i == end) {
+      return InvalidNumber
+    }
+    var value = 0
+    while (i < end) {
+      val digit = bytes(i) - '0'
+      if (digit < 0 || digit > 9) {
+        return InvalidNumber
+      }
+      value = value * 10 + digit
+      i += 1
+    }
+    if (negative) -value else value
+  }
+
+  private def matches(expected: Array[Byte], bytes: Array[Byte], start: Int, end: Int) = {
+    if (expected.length != end - start) {
+      false
+    } else {
+      var i = 0
+      while (i < expected.length && expected(i) == bytes(start + i)) i += 1
+      i == expected.length
+    }
+  }
+
+  private def isWhitespace(b: Byte) = b == ' ' || b == '\r' || b == '\n' || b == '\t'
+
+  private def bytes(s: String) = s.getBytes(US_ASCII)
+}
@@ -0,0 +1,119 @@
+package com.seismic.messages
+
+import java.nio.charset.StandardCharsets.US_ASCII
+
+import com.seismic.log.Log
+
+/**
+  * Interns trigger names as small integer ids so the trigger path can index arrays instead of hashing strings.
+  * KICK and SNARE are always 0 and 1, matching InstrumentBanks.names: trigger id * 2 is the bank, + 1 for the
+  * finger-triggered ALT bank. Any other pad has to be registered up front, either with register or by naming it in the
+  * seismic.triggers system property (e.g. -Dseismic.triggers=TOM,PAD3); looking up a name never registers it, so
+  * whatever turns up on the serial line can't use up the table.
+  */
+object Triggers {
+  val MaxTriggers = 32
+  val Unknown = -1
+  final val KICK = 0
+  final val SNARE = 1
+
+  private val registeredNames = new Array[String](MaxTriggers)
+  private val registeredBytes = new Array[Array[Byte]](MaxTriggers)
+  @volatile private var count = 0
+
+  register("KICK")
+  register("SNARE")
+  registerConfigured()
+
+  def names: Array[String] = registeredNames.take(count)
+
+  /**
+    * How many triggers are registered; every id below this has a name.
+    */
+  def registered: Int = count
+
+  /**
+    * @return the name's id, or Unknown if it isn't registered.
+    */
+  def idFor(name: String): Int = {
+    val registered = count
+    var id = 0
+    while (id < registered) {
+      if (registeredNames(id) == name) {
+        return id
+      }
+      id += 1
+    }
+    Unknown
+  }
+
+  /**
+    * Looks up the name in bytes(from until to) without building a String.
+    * @return the name's id, or Unknown if it isn't registered.
+    */
+  def idFor(bytes: Array[Byte], from: Int, to: Int): Int = {
+    val registered = count
+    var id = 0
+    while (id < registered) {
+      if (matches(registeredBytes(id), bytes, from, to)) {
+        return id
+      }
+      id += 1
+    }
+    Unknown
+  }
+
+  def nameFor(id: Int): String = {
+    registeredNames(id)
+  }
+
+  /**
+    * Gives the name the next free id, or returns the one it already has. Only for names from configuration; the
+    * trigger path only ever looks names up.
+    * @return the name's id, or Unknown if every id is taken.
+    */
+  def register(name: String): Int = synchronized {
+    val existing = registeredNames.indexWhere { registeredName => registeredName == name }
+    if (existing > -1 && existing < count) {
+      existing
+    } else if (count == MaxTriggers) {
+      Log.warn(Log.Trigger, "Can't register trigger %s, already tracking %d triggers.", name, MaxTriggers)
+      Unknown
+    } else {
+      val id = count
+      registeredNames(id) = name
+      registeredBytes(id) = name.getBytes(US_ASCII)
+      count = id + 1
+      id
+    }
+  }
+
+  /**
+    * Forgets every trigger but KICK and SNARE. Only for tests: ids handed out before are reused.
+    */
+  private[seismic] def reset(): Unit = synchronized {
+    for (id <- 2 until count) {
+      registeredNames(id) = null
+      registeredBytes(id) = null
+    }
+    count = 2
+  }
+
+  private def registerConfigured(): Unit = {
+    Option(System.getProperty("seismic.triggers")).foreach { names =>
+      names.split(",").map { name => name.trim }.filter { name => name.nonEmpty }.foreach { name => register(name) }
+    }
+  }
+
+  private def matches(name: Array[Byte], bytes: Array[Byte], from: Int, to: Int): Boolean = {
+    if (name.length != to - from) {
+      false
+    } else {
+      var i = 0
+      while (i < name.length && name(i) == bytes(from + i)) {
+        i += 1
+      }
+      i == name.length
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.seismic.metrics
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+
+object LatencyHistogram {
+  // 64 linear sub-buckets per power of two keeps every recorded value within about 1.5% of what's reported.
+  private val SubBucketBits = 6
+  private val SubBucketCount = 1 << SubBucketBits
+  private val LinearLimit = SubBucketCount * 2
+  private val MaxValue = (1L << 40) - 1
+  private val BucketCount = indexFor(MaxValue) + 1
+
+  private def indexFor(value: Long): Int = {
+    if (value < LinearLimit) {
+      value.toInt
+    } else {
+      val shift = (63 - java.lang.Long.numberOfLeadingZeros(value)) - SubBucketBits
+      shift * SubBucketCount + (value >>> shift).toInt
+    }
+  }
+
+  private def highestValueAt(index: Int): Long = {
+    if (index < LinearLimit) {
+      index
+    } else {
+      val shift = (index >> SubBucketBits) - 1
+      val subBucket = index - shift * SubBucketCount
+      ((subBucket + 1L) << shift) - 1
+    }
+  }
+}
+
+/**
+  * A fixed-size, log-linear histogram of nanosecond latencies, from 0 up to about 18 minutes. Recording is a couple
+  * of atomic increments and never allocates or locks, so any thread can record while another reads percentiles.
+  */
+class LatencyHistogram {
+  import LatencyHistogram._
+
+  private val counts = new AtomicLongArray(BucketCount)
+  private val total = new AtomicLong()
+  private val max = new AtomicLong()
+
+  def record(nanos: Long): Unit = {
+    val value = Math.min(Math.max(nanos, 0), MaxValue)
+    counts.incrementAndGet(indexFor(value))
+    total.incrementAndGet()
+
+    var currentMax = max.get
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get
+    }
+  }
+
+  def count = total.get
+
+  def maxValue = max.get
+
+  /**
+    * @param percentile 0 to 100
+    * @return the highest latency, in nanos, that at least that percentile of recorded values are at or below.
+    */
+  def valueAtPercentile(percentile: Double): Long = {
+    val recorded = total.get
+    if (recorded == 0) {
+      0
+    } else {
+      val target = Math.max(1, Math.ceil(recorded * percentile / 100d).toLong)
+      var seen = 0L
+      var index = 0
+      while (index < BucketCount - 1 && seen + counts.get(index) < target) {
+        seen += counts.get(index)
+        index += 1
+      }
+      Math.min(highestValueAt(index), max.get)
+    }
+  }
+
+  /**
+    * A copy of what's been recorded so far, for working out later what was recorded since.
+    */
+  def snapshot: LatencyHistogram = {
+    val copy = new LatencyHistogram
+    var recorded = 0L
+    for (index <- 0 until BucketCount) {
+      val count = counts.get(index)
+      copy.counts.set(index, count)
+      recorded += count
+    }
+    copy.total.set(recorded)
+    copy.max.set(max.get)
+    copy
+  }
+
+  /**
+    * What was recorded after earlier, a snapshot of this histogram, was taken. Its max is the top of the highest
+    * bucket recorded into since, so it's as accurate as the percentiles rather than exact.
+    */
+  def since(earlier: LatencyHistogram): LatencyHistogram = {
+    val difference = new LatencyHistogram
+    var recorded = 0L
+    var highest = -1
+    for (index <- 0 until BucketCount) {
+      val count = counts.get(index) - earlier.counts.get(index)
+      if (count > 0) {
+        difference.counts.set(index, count)
+        recorded += count
+        highest = index
+      }
+    }
+    difference.total.set(recorded)
+    difference.max.set(if (highest < 0) 0 else Math.min(highestValueAt(highest), max.get))
+    difference
+  }
+
+  def reset(): Unit = {
+    for (index <- 0 until BucketCount) {
+      counts.set(index, 0)
+    }
+    total.set(0)
+    max.set(0)
+  }
+}
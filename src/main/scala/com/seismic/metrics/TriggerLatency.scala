@@ -0,0 +1,72 @@
+package com.seismic.metrics
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+import com.seismic.messages.Triggers
+
+/**
+  * How long a hit takes from the serial port handing us its bytes to each later stage, ending with its notes being
+  * queued on the MIDI output lanes. How long each lane then took to send them, including any seismic.midi.offsetMicros
+  * delay, is in MidiOutputLane.report. Latencies are kept overall and per trigger, and can be read at any time.
+  */
+object TriggerLatency {
+  final val Framed = 0
+  final val Parsed = 1
+  final val Dispatched = 2
+  final val MidiQueued = 3
+  val stageNames = Array("framed", "parsed", "dispatched", "midi queued")
+
+  private val overall = Array.fill(stageNames.length)(new LatencyHistogram)
+  private val perTrigger = new AtomicReferenceArray[Array[LatencyHistogram]](Triggers.MaxTriggers)
+
+  /**
+    * @param triggerId the trigger the hit came from, or Triggers.Unknown for messages that aren't hits.
+    */
+  def record(triggerId: Int, stage: Int, latencyNanos: Long): Unit = {
+    overall(stage).record(latencyNanos)
+    if (triggerId >= 0 && triggerId < Triggers.MaxTriggers) {
+      histogramsFor(triggerId)(stage).record(latencyNanos)
+    }
+  }
+
+  def histogram(stage: Int) = overall(stage)
+
+  def reset(): Unit = {
+    overall.foreach { histogram => histogram.reset() }
+    for (triggerId <- 0 until Triggers.MaxTriggers) {
+      Option(perTrigger.get(triggerId)).foreach { histograms => histograms.foreach { h => h.reset() } }
+    }
+  }
+
+  def report: String = {
+    val lines = Seq(header, formatRows("all", overall)) ++
+      (0 until Triggers.MaxTriggers).flatMap { triggerId =>
+        Option(perTrigger.get(triggerId)).map { histograms => formatRows(Triggers.nameFor(triggerId), histograms) }
+      }
+    lines.mkString("\n")
+  }
+
+  private def histogramsFor(triggerId: Int) = {
+    val histograms = perTrigger.get(triggerId)
+    if (histograms != null) {
+      histograms
+    } else {
+      perTrigger.compareAndSet(triggerId, null, Array.fill(stageNames.length)(new LatencyHistogram))
+      perTrigger.get(triggerId)
+    }
+  }
+
+  private def header = {
+    "%-8s %-11s %9s %9s %9s %9s %9s".format("trigger", "stage", "count", "p50 us", "p99 us", "p99.9 us", "max us")
+  }
+
+  private def formatRows(name: String, histograms: Array[LatencyHistogram]) = {
+    stageNames.indices.map { stage =>
+      val h = histograms(stage)
+      f"$name%-8s ${stageNames(stage)}%-11s ${h.count}%9d ${micros(h.valueAtPercentile(50))}%9.1f " +
+        f"${micros(h.valueAtPercentile(99))}%9.1f ${micros(h.valueAtPercentile(99.9))}%9.1f ${micros(h.maxValue)}%9.1f"
+    }.mkString("\n")
+  }
+
+  private def micros(nanos: Long) = nanos / 1000d
+}
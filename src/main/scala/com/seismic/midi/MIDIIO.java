@@ -77,6 +77,24 @@ public interface MIDIIO {
 
     void sendNoteOff(Note note);
 
+    /**
+     * Sends a note on for an event that arrived at originNanos (System.nanoTime), so a scheduled output can deliver
+     * it a fixed time after that. 0 means now.
+     */
+    void sendNoteOn(int channel, int pitch, int velocity, long originNanos);
+
+    /**
+     * Sends a note off for an event that arrived at originNanos, as sendNoteOn.
+     */
+    void sendNoteOff(int channel, int pitch, int velocity, long originNanos);
+
+    /**
+     * Sends count notes in one go for an event that arrived at originNanos, as sendNoteOn. A negative channel means
+     * defaultChannel; note ons get velocity, note offs 0.
+     */
+    void sendNotes(int[] commands, int[] channels, int[] pitches, int count, int defaultChannel, int velocity,
+                   long originNanos);
+
     void sendControllerChange(int channel, int number, int value);
 
     void sendControllerChange(ControlChange change);
@@ -0,0 +1,176 @@
+package com.seismic.midi;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every MIDI device the system knows about, with its MidiDevice and whether it can be an input or an output, looked
+ * up once and kept. Asking MidiSystem for a device can be slow, especially with lots of virtual buses, so a refresh
+ * only asks about devices it hasn't seen before; everything else is reused from the last scan.
+ * <p>
+ * scanInBackground starts the first scan without waiting for it. Anything that needs the devices before that scan
+ * finishes waits for it rather than starting another. Lookups read an immutable snapshot and never block once the
+ * first scan is done.
+ */
+public final class MidiDeviceRegistry {
+
+    /**
+     * One device as of the last scan. device is null if the device was unavailable.
+     */
+    public static final class Entry {
+        public final MidiDevice.Info info;
+        public final MidiDevice device;
+        public final boolean input;
+        public final boolean output;
+
+        Entry(MidiDevice.Info info, MidiDevice device) {
+            this.info = info;
+            this.device = device;
+            this.input = device != null && device.getMaxTransmitters() != 0;
+            this.output = device != null && device.getMaxReceivers() != 0;
+        }
+
+        public boolean isAvailable() {
+            return device != null;
+        }
+    }
+
+    private static final class Snapshot {
+        final Entry[] entries;
+        final Map<MidiDevice.Info, Entry> byInfo = new HashMap<MidiDevice.Info, Entry>();
+        final Map<String, Entry> inputsByName = new HashMap<String, Entry>();
+        final Map<String, Entry> outputsByName = new HashMap<String, Entry>();
+        final MidiDevice.Info[] inputs;
+        final MidiDevice.Info[] outputs;
+        final MidiDevice.Info[] unavailable;
+
+        Snapshot(Entry[] entries) {
+            this.entries = entries;
+
+            ArrayList<MidiDevice.Info> inputInfos = new ArrayList<MidiDevice.Info>();
+            ArrayList<MidiDevice.Info> outputInfos = new ArrayList<MidiDevice.Info>();
+            ArrayList<MidiDevice.Info> unavailableInfos = new ArrayList<MidiDevice.Info>();
+
+            for (Entry entry : entries) {
+                byInfo.put(entry.info, entry);
+                String name = entry.info.getName();
+                // the first device with a name wins, as it always has when adding by name
+                if (entry.input) {
+                    inputInfos.add(entry.info);
+                    if (!inputsByName.containsKey(name)) inputsByName.put(name, entry);
+                }
+                if (entry.output) {
+                    outputInfos.add(entry.info);
+                    if (!outputsByName.containsKey(name)) outputsByName.put(name, entry);
+                }
+                if (!entry.isAvailable()) unavailableInfos.add(entry.info);
+            }
+
+            inputs = inputInfos.toArray(new MidiDevice.Info[inputInfos.size()]);
+            outputs = outputInfos.toArray(new MidiDevice.Info[outputInfos.size()]);
+            unavailable = unavailableInfos.toArray(new MidiDevice.Info[unavailableInfos.size()]);
+        }
+    }
+
+    private static volatile Snapshot snapshot;
+
+    private MidiDeviceRegistry() {
+    }
+
+    /**
+     * Starts the first scan on its own thread so it's done, or nearly, by the time the first output is added.
+     */
+    public static void scanInBackground() {
+        if (snapshot != null) return;
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                snapshot();
+            }
+        }, "seismic-midi-scan");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Scans again for devices that have come or gone. Devices already known are kept as they are, so only new ones
+     * cost anything.
+     */
+    public static synchronized void refresh() {
+        Snapshot previous = snapshot;
+        MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+        Entry[] entries = new Entry[infos.length];
+
+        for (int i = 0; i < infos.length; i++) {
+            Entry known = previous == null ? null : previous.byInfo.get(infos[i]);
+            entries[i] = known != null && known.isAvailable() ? known : scan(infos[i]);
+        }
+
+        snapshot = new Snapshot(entries);
+    }
+
+    public static Entry[] entries() {
+        return snapshot().entries;
+    }
+
+    public static MidiDevice.Info[] inputs() {
+        return snapshot().inputs;
+    }
+
+    public static MidiDevice.Info[] outputs() {
+        return snapshot().outputs;
+    }
+
+    public static MidiDevice.Info[] unavailable() {
+        return snapshot().unavailable;
+    }
+
+    /**
+     * @return the first input device with the name, or null if there isn't one.
+     */
+    public static Entry inputNamed(String name) {
+        return snapshot().inputsByName.get(name);
+    }
+
+    /**
+     * @return the first output device with the name, or null if there isn't one.
+     */
+    public static Entry outputNamed(String name) {
+        return snapshot().outputsByName.get(name);
+    }
+
+    /**
+     * The device for info, from the last scan if it was available then, otherwise straight from MidiSystem.
+     */
+    static MidiDevice deviceFor(MidiDevice.Info info) throws MidiUnavailableException {
+        Entry entry = snapshot().byInfo.get(info);
+        if (entry != null && entry.isAvailable()) return entry.device;
+        return MidiSystem.getMidiDevice(info);
+    }
+
+    private static Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) return current;
+
+        synchronized (MidiDeviceRegistry.class) {
+            if (snapshot == null) refresh();
+            return snapshot;
+        }
+    }
+
+    private static Entry scan(MidiDevice.Info info) {
+        try {
+            return new Entry(info, MidiSystem.getMidiDevice(info));
+        } catch (MidiUnavailableException e) {
+            return new Entry(info, null);
+        } catch (IllegalArgumentException e) {
+            // the device went away between listing and asking for it
+            return new Entry(info, null);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.seismic.midi
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicReference}
+import java.util.concurrent.locks.LockSupport
+import javax.sound.midi.{MidiMessage, Receiver, ShortMessage}
+
+import com.seismic.metrics.LatencyHistogram
+import com.seismic.queue.{RingBuffer, RingBufferStage, WaitStrategy}
+
+/**
+  * A slot in a MidiOutputLane: a short message packed as status and data bytes, or, for the rare meta or sysex
+  * message, the message itself.
+  */
+class MidiLaneSlot {
+  var status = 0
+  var data1 = 0
+  var data2 = 0
+  var message: MidiMessage = _
+  var timestamp = 0L
+  var publishedNanos = 0L
+  /**
+    * System.nanoTime the message should go out, or 0 for as soon as possible.
+    */
+  var dueNanos = 0L
+}
+
+object MidiOutputLane {
+  val DefaultCapacity = 1024
+  /**
+    * A lane waiting for a due time parks until this close to it, then spins the rest of the way: parking alone
+    * overshoots by tens of microseconds or more.
+    */
+  val SpinNanos = 200000L
+  /**
+    * How long close waits for a send in flight, which could be waiting for a due time or stuck in a slow device.
+    */
+  val CloseTimeoutMillis = 1000L
+
+  private val lanes = new AtomicReference[List[MidiOutputLane]](Nil)
+
+  /**
+    * Sent and dropped counts and queueing delay for every output lane that's currently open, and for scheduled
+    * messages, how many were already late and how far past due the rest went out.
+    */
+  def report: String = {
+    val header = "%-24s %9s %9s %9s %9s %9s %9s %9s".format("output", "sent", "dropped", "p99 us", "max us",
+                                                             "late", "jit p99", "jit max")
+    (header +: lanes.get.reverse.map { lane =>
+      "%-24s %9d %9d %9.1f %9.1f %9d %9.1f %9.1f".format(lane.name, lane.sentCount, lane.droppedCount,
+                                                          lane.queueDelay.valueAtPercentile(99) / 1000d,
+                                                          lane.queueDelay.maxValue / 1000d,
+                                                          lane.lateCount,
+                                                          lane.jitter.valueAtPercentile(99) / 1000d,
+                                                          lane.jitter.maxValue / 1000d)
+    }).mkString("\n")
+  }
+
+  /**
+    * Messages dropped across every open lane.
+    */
+  def totalDropped: Long = lanes.get.map { lane => lane.droppedCount }.sum
+
+  private def opened(lane: MidiOutputLane): Unit = {
+    var current = lanes.get
+    while (!lanes.compareAndSet(current, lane :: current)) {
+      current = lanes.get
+    }
+  }
+
+  private def closed(lane: MidiOutputLane): Unit = {
+    var current = lanes.get
+    while (!lanes.compareAndSet(current, current.filterNot { l => l eq lane })) {
+      current = lanes.get
+    }
+  }
+}
+
+/**
+  * Everything sent to one MIDI output goes through its own lane: the sending thread publishes into a bounded ring
+  * and returns, and a dedicated thread hands each message to the device's Receiver. A slow or stalled device only
+  * backs up its own lane; once that's full, further messages for it are dropped and counted rather than holding
+  * up the trigger path or the other outputs.
+  *
+  * A message published with a due time is held until then: the lane parks until SpinNanos before it and spins the
+  * rest. Messages are sent in the order they were published, so one due later holds up those behind it.
+  */
+class MidiOutputLane(val name: String,
+                     receiver: Receiver,
+                     capacity: Int = MidiOutputLane.DefaultCapacity,
+                     waitStrategy: WaitStrategy = WaitStrategy.forStage("midi")) {
+
+  private val ring = new RingBuffer[MidiLaneSlot](capacity, () => new MidiLaneSlot, WaitStrategy.Yielding)
+  private val sender = new RingBufferStage[MidiLaneSlot](s"midi-out-$name", ring, None, waitStrategy, send)
+  private val sent = new AtomicLong()
+  private val dropped = new AtomicLong()
+  private val late = new AtomicLong()
+  val queueDelay = new LatencyHistogram
+  /**
+    * How long after its due time each scheduled message actually went out.
+    */
+  val jitter = new LatencyHistogram
+
+  sender.start()
+  MidiOutputLane.opened(this)
+
+  def publish(status: Int, data1: Int, data2: Int, timestamp: Long): Boolean = {
+    publish(status, data1, data2, timestamp, 0L)
+  }
+
+  /**
+    * @param dueNanos System.nanoTime to send the message at, or 0 for as soon as possible.
+    * @return false if the lane was full and the message was dropped
+    */
+  def publish(status: Int, data1: Int, data2: Int, timestamp: Long, dueNanos: Long): Boolean = {
+    val sequence = ring.tryNext()
+    if (sequence < 0) {
+      dropped.incrementAndGet()
+      false
+    } else {
+      val slot = ring.get(sequence)
+      slot.status = status
+      slot.data1 = data1
+      slot.data2 = data2
+      slot.message = null
+      slot.timestamp = timestamp
+      slot.dueNanos = dueNanos
+      slot.publishedNanos = System.nanoTime()
+      ring.publish(sequence)
+      true
+    }
+  }
+
+  def publish(message: MidiMessage, timestamp: Long): Boolean = {
+    publish(message, timestamp, 0L)
+  }
+
+  /**
+    * For messages that aren't short messages. The lane holds on to the message until it's sent, so the caller
+    * mustn't change it afterwards.
+    */
+  def publish(message: MidiMessage, timestamp: Long, dueNanos: Long): Boolean = {
+    val sequence = ring.tryNext()
+    if (sequence < 0) {
+      dropped.incrementAndGet()
+      false
+    } else {
+      val slot = ring.get(sequence)
+      slot.message = message
+      slot.timestamp = timestamp
+      slot.dueNanos = dueNanos
+      slot.publishedNanos = System.nanoTime()
+      ring.publish(sequence)
+      true
+    }
+  }
+
+  def sentCount = sent.get
+
+  def droppedCount = dropped.get
+
+  /**
+    * Scheduled messages the lane only got to after they were due.
+    */
+  def lateCount = late.get
+
+  def depth = ring.depth
+
+  /**
+    * Stops the sender thread, waits for it to finish any send in flight, then closes the device's receiver.
+    */
+  def close(): Unit = {
+    sender.stop()
+    sender.join(MidiOutputLane.CloseTimeoutMillis)
+    MidiOutputLane.closed(this)
+    receiver.close()
+  }
+
+  private def send(slot: MidiLaneSlot): Unit = {
+    if (slot.dueNanos != 0) {
+      waitUntilDue(slot.dueNanos)
+    }
+    if (slot.message != null) {
+      val message = slot.message
+      slot.message = null
+      receiver.send(message, slot.timestamp)
+    } else {
+      // a new message every time: receivers may queue the message itself rather than its bytes
+      receiver.send(new ShortMessage(slot.status, slot.data1, slot.data2), slot.timestamp)
+    }
+    val sentNanos = System.nanoTime()
+    queueDelay.record(sentNanos - slot.publishedNanos)
+    if (slot.dueNanos != 0) {
+      jitter.record(Math.max(0L, sentNanos - slot.dueNanos))
+    }
+    sent.incrementAndGet()
+  }
+
+  private def waitUntilDue(dueNanos: Long): Unit = {
+    var remaining = dueNanos - System.nanoTime()
+    if (remaining < 0) {
+      late.incrementAndGet()
+    }
+    while (remaining > MidiOutputLane.SpinNanos) {
+      LockSupport.parkNanos(remaining - MidiOutputLane.SpinNanos)
+      remaining = dueNanos - System.nanoTime()
+    }
+    while (remaining > 0) {
+      remaining = dueNanos - System.nanoTime()
+    }
+  }
+}
@@ -1,21 +1,35 @@
 package com.seismic.midi;
 
+import com.seismic.log.Log;
+import com.seismic.queue.WaitStrategy;
+
 import javax.sound.midi.*;
 import java.util.ArrayList;
 import java.util.Formatter;
 
 public class StupidMonkeyMIDI implements MIDIIO {
 
-    static MidiDevice.Info[] availableDevices;
-
     String busName;
     boolean sendTimestamps;
 
     ArrayList<InputDeviceContainer> inputDevicesContainers;
     ArrayList<OutputDeviceContainer> outputDeviceContainers;
 
+    /**
+     * A copy of outputDeviceContainers, replaced whenever an output is added or removed, so sending can walk the
+     * outputs without holding the lock that guards the list.
+     */
+    volatile OutputDeviceContainer[] outputs = new OutputDeviceContainer[0];
+
     ArrayList<MidiListener> listeners;
 
+    /**
+     * When non-zero, every message is delivered this long after its event arrived at the serial port rather than as
+     * soon as possible: a small constant delay in exchange for next to no jitter. Set with -Dseismic.midi.offsetMicros
+     * or setScheduleOffsetMicros.
+     */
+    volatile long scheduleOffsetNanos = Long.getLong("seismic.midi.offsetMicros", 0) * 1000;
+
 
     /**
      * Perfoms the initialisation of new MidiBus objects, is private for a reason, and is only ever called within the
@@ -168,11 +182,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
     public boolean addInput(String deviceName) {
         if (deviceName.equals("")) return false;
 
-        MidiDevice.Info[] devices = availableInputsMidiDeviceInfo();
-
-        for (int i = 0; i < devices.length; i++) {
-            if (devices[i].getName().equals(deviceName)) return addInput(devices[i]);
-        }
+        MidiDeviceRegistry.Entry device = MidiDeviceRegistry.inputNamed(deviceName);
+        if (device != null) return addInput(device.info);
 
         System.err.println("\nThe MidiBus Warning: No dataAvailable input MIDI devices named: \"" + deviceName + "\" were found");
         return false;
@@ -212,7 +223,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     synchronized boolean addInput(MidiDevice.Info deviceInfo) {
         try {
-            MidiDevice newDevice = MidiSystem.getMidiDevice(deviceInfo);
+            MidiDevice newDevice = MidiDeviceRegistry.deviceFor(deviceInfo);
 
             if (newDevice.getMaxTransmitters() == 0) {
                 System.err.println("\nThe MidiBus Warning: The chosen input device \"" + deviceInfo.getName() + "\" was not added because it is output only");
@@ -278,8 +289,9 @@ public class StupidMonkeyMIDI implements MIDIIO {
             OutputDeviceContainer container = outputDeviceContainers.get(deviceNum);
 
             outputDeviceContainers.remove(container);
+            refreshOutputs();
 
-            container.receiver.close();
+            container.lane.close();
 
             return true;
         } catch (ArrayIndexOutOfBoundsException e) {
@@ -301,11 +313,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
     public boolean addOutput(String deviceName) {
         if (deviceName.equals("")) return false;
 
-        MidiDevice.Info[] devices = availableOutputsMidiDeviceInfo();
-
-        for (int i = 0; i < devices.length; i++) {
-            if (devices[i].getName().equals(deviceName)) return addOutput(devices[i]);
-        }
+        MidiDeviceRegistry.Entry device = MidiDeviceRegistry.outputNamed(deviceName);
+        if (device != null) return addOutput(device.info);
 
         System.err.println("\nThe MidiBus Warning: No dataAvailable input MIDI devices named: \"" + deviceName + "\" were found");
         return false;
@@ -326,8 +335,9 @@ public class StupidMonkeyMIDI implements MIDIIO {
         for (OutputDeviceContainer container : outputDeviceContainers) {
             if (container.info.getName().equals(deviceName)) {
                 outputDeviceContainers.remove(container);
+                refreshOutputs();
 
-                container.receiver.close();
+                container.lane.close();
 
                 return true;
             }
@@ -343,7 +353,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     synchronized boolean addOutput(MidiDevice.Info deviceInfo) {
         try {
-            MidiDevice newDevice = MidiSystem.getMidiDevice(deviceInfo);
+            MidiDevice newDevice = MidiDeviceRegistry.deviceFor(deviceInfo);
 
             if (newDevice.getMaxReceivers() == 0) {
                 System.err.println("\nThe MidiBus Warning: The chosen output device \"" + deviceInfo.getName() + "\" was not added because it is input only");
@@ -358,8 +368,11 @@ public class StupidMonkeyMIDI implements MIDIIO {
 
             OutputDeviceContainer newContainer = new OutputDeviceContainer(newDevice);
             newContainer.receiver = newDevice.getReceiver();
+            newContainer.lane = new MidiOutputLane(deviceInfo.getName(), newContainer.receiver,
+                    MidiOutputLane.DefaultCapacity(), WaitStrategy.forStage("midi"));
 
             outputDeviceContainers.add(newContainer);
+            refreshOutputs();
 
             return true;
         } catch (MidiUnavailableException e) {
@@ -402,13 +415,14 @@ public class StupidMonkeyMIDI implements MIDIIO {
         //Also it's broken on MAC
         try {
             for (OutputDeviceContainer container : outputDeviceContainers) {
-                container.receiver.close();
+                container.lane.close();
             }
         } catch (Exception e) {
             System.err.println("The MidiBus Warning: Unexpected error during clearOutputs()");
         }
 
         outputDeviceContainers.clear();
+        refreshOutputs();
     }
 
     /**
@@ -431,16 +445,9 @@ public class StupidMonkeyMIDI implements MIDIIO {
      * @see #clearAll()
      */
     private void closeAllMidiDevices() {
-        if (availableDevices == null) findMidiDevices();
-        MidiDevice device;
-
-        for (int i = 0; i < availableDevices.length; i++) {
-            try {
-                device = MidiSystem.getMidiDevice(availableDevices[i]);
-                if (device.isOpen()) device.close();
-            } catch (MidiUnavailableException e) {
-                //Device wasn't dataAvailable, which is fine since we wanted to close it anyways
-            }
+        for (MidiDeviceRegistry.Entry entry : MidiDeviceRegistry.entries()) {
+            //Devices that weren't dataAvailable are skipped, which is fine since we wanted to close them anyways
+            if (entry.isAvailable() && entry.device.isOpen()) entry.device.close();
         }
 
     }
@@ -484,14 +491,12 @@ public class StupidMonkeyMIDI implements MIDIIO {
                 System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
             }
         } else {
-            ShortMessage message = new ShortMessage();
             try {
                 if (data.length > 2)
-                    message.setMessage((data[0] & 0xFF), (data[1] & 0xFF), (data[2] & 0xFF));
+                    sendShortMessage((data[0] & 0xFF), (data[1] & 0xFF), (data[2] & 0xFF));
                 else if (data.length > 1)
-                    message.setMessage((data[0] & 0xFF), (data[1] & 0xFF), 0);
-                else message.setMessage((data[0] & 0xFF));
-                sendMessage(message);
+                    sendShortMessage((data[0] & 0xFF), (data[1] & 0xFF), 0);
+                else sendShortMessage((data[0] & 0xFF));
             } catch (InvalidMidiDataException e) {
                 System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
             }
@@ -516,10 +521,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendMessage(int status) {
-        ShortMessage message = new ShortMessage();
         try {
-            message.setMessage(status);
-            sendMessage(message);
+            sendShortMessage(status);
         } catch (InvalidMidiDataException e) {
             e.printStackTrace();
             System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
@@ -568,10 +571,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendMessage(int status, int data1, int data2) {
-        ShortMessage message = new ShortMessage();
         try {
-            message.setMessage(status, data1, data2);
-            sendMessage(message);
+            sendShortMessage(status, data1, data2);
         } catch (InvalidMidiDataException e) {
             System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
         }
@@ -598,10 +599,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendMessage(int command, int channel, int data1, int data2) {
-        ShortMessage message = new ShortMessage();
         try {
-            message.setMessage(command, channel, data1, data2);
-            sendMessage(message);
+            sendShortMessage(command, channel, data1, data2);
         } catch (InvalidMidiDataException e) {
             System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
         }
@@ -624,11 +623,132 @@ public class StupidMonkeyMIDI implements MIDIIO {
      * @see #sendControllerChange(ControlChange change)
      */
     @Override
-    public synchronized void sendMessage(MidiMessage message) {
-        for (OutputDeviceContainer container : outputDeviceContainers) {
-            if (sendTimestamps) container.receiver.send(message, System.currentTimeMillis());
-            else container.receiver.send(message, 0);
+    public void sendMessage(MidiMessage message) {
+        sendToOutputs(message);
+    }
+
+    /**
+     * Sends a run of notes, such as a chord from one Instrument, holding the lock once for all of them. Each note goes
+     * to the lanes as its status and data bytes, so nothing is allocated. Note ons get the given velocity, note offs 0.
+     *
+     * @param commands       ShortMessage.NOTE_ON or ShortMessage.NOTE_OFF for each note.
+     * @param channels       the channel for each note, or a negative number for defaultChannel.
+     * @param pitches        the pitch for each note.
+     * @param count          how many of the arrays' entries to send.
+     * @param defaultChannel the channel for notes without one.
+     * @param velocity       the velocity for note ons.
+     * @param originNanos    when the event the notes are for arrived, or 0 for now.
+     * @see #sendNoteOn(int channel, int pitch, int velocity)
+     * @see #sendNoteOff(int channel, int pitch, int velocity)
+     */
+    @Override
+    public synchronized void sendNotes(int[] commands, int[] channels, int[] pitches, int count, int defaultChannel, int velocity,
+                                       long originNanos) {
+        for (int i = 0; i < count; i++) {
+            int channel = channels[i] < 0 ? defaultChannel : channels[i];
+            int noteVelocity = commands[i] == ShortMessage.NOTE_ON ? velocity : 0;
+            Log.debug(Log.Midi(), "sendNotes cmd: %d c: %d p: %d", commands[i], channel, pitches[i]);
+            try {
+                sendToOutputs(statusFor(commands[i], constrain(channel, 0, 15)), constrain(pitches[i], 0, 127), constrain(noteVelocity, 0, 127), originNanos);
+            } catch (InvalidMidiDataException e) {
+                Log.warn(Log.Midi(), "Note not sent, invalid MIDI data c: %d p: %d v: %d", channel, pitches[i], noteVelocity);
+            }
+        }
+    }
+
+    private synchronized void sendShortMessage(int status) throws InvalidMidiDataException {
+        sendToOutputs(new ShortMessage(status));
+    }
+
+    private synchronized void sendShortMessage(int status, int data1, int data2) throws InvalidMidiDataException {
+        sendToOutputs(new ShortMessage(status, data1, data2));
+    }
+
+    private synchronized void sendShortMessage(int command, int channel, int data1, int data2) throws InvalidMidiDataException {
+        sendToOutputs(new ShortMessage(command, channel, data1, data2));
+    }
+
+    /**
+     * data1 and data2 must already be in range, as they are from every caller.
+     */
+    private synchronized void sendShortMessage(int command, int channel, int data1, int data2, long originNanos) throws InvalidMidiDataException {
+        sendToOutputs(statusFor(command, channel), data1, data2, originNanos);
+    }
+
+    /**
+     * The status byte for a channel message, checked as ShortMessage.setMessage would.
+     */
+    private static int statusFor(int command, int channel) throws InvalidMidiDataException {
+        if (command >= 0xF0 || command < 0x80) {
+            throw new InvalidMidiDataException("command out of range: 0x" + Integer.toHexString(command));
         }
+        if ((channel & 0xFFFFFFF0) != 0) {
+            throw new InvalidMidiDataException("channel out of range: " + channel);
+        }
+        return (command & 0xF0) | (channel & 0x0F);
+    }
+
+    private void sendToOutputs(MidiMessage message) {
+        sendToOutputs(message, 0);
+    }
+
+    /**
+     * Hands a short message to every output's lane as bytes and returns without waiting for any device. The due time
+     * goes into each lane with the message, so any number of threads can send for events that arrived at different
+     * times.
+     */
+    private void sendToOutputs(int status, int data1, int data2, long originNanos) {
+        long timestamp = sendTimestamps ? System.currentTimeMillis() : 0;
+        long dueNanos = dueNanos(originNanos);
+        OutputDeviceContainer[] current = outputs;
+        for (int i = 0; i < current.length; i++) {
+            current[i].lane.publish(status, data1, data2, timestamp, dueNanos);
+        }
+    }
+
+    /**
+     * Hands the message to every output's lane, as for sendToOutputs(status, data1, data2, originNanos). Short
+     * messages are copied into the lanes as bytes; anything else is held by the lanes until sent.
+     */
+    private void sendToOutputs(MidiMessage message, long originNanos) {
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            sendToOutputs(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2(), originNanos);
+        } else {
+            long timestamp = sendTimestamps ? System.currentTimeMillis() : 0;
+            long dueNanos = dueNanos(originNanos);
+            OutputDeviceContainer[] current = outputs;
+            for (int i = 0; i < current.length; i++) {
+                current[i].lane.publish(message, timestamp, dueNanos);
+            }
+        }
+    }
+
+    /**
+     * @return when a message for an event that arrived at originNanos should reach the outputs, or 0 for as soon as
+     * possible.
+     */
+    private long dueNanos(long originNanos) {
+        long offset = scheduleOffsetNanos;
+        if (offset <= 0) {
+            return 0;
+        }
+        return (originNanos != 0 ? originNanos : System.nanoTime()) + offset;
+    }
+
+    /**
+     * @param micros how long after an event arrives its messages go out, or 0 to send them as soon as possible.
+     */
+    public void setScheduleOffsetMicros(long micros) {
+        scheduleOffsetNanos = micros * 1000;
+    }
+
+    public long getScheduleOffsetMicros() {
+        return scheduleOffsetNanos / 1000;
+    }
+
+    private void refreshOutputs() {
+        outputs = outputDeviceContainers.toArray(new OutputDeviceContainer[outputDeviceContainers.size()]);
     }
 
     /**
@@ -651,13 +771,21 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendNoteOn(int channel, int pitch, int velocity) {
-        System.out.println(String.format("sendNoteOn c: %s p: %s v: %s", channel, pitch, velocity));
-        ShortMessage message = new ShortMessage();
+        sendNoteOn(channel, pitch, velocity, 0);
+    }
+
+    /**
+     * Sends a NoteOn for an event that arrived at originNanos (System.nanoTime), or 0 for now.
+     *
+     * @see #sendNoteOn(int channel, int pitch, int velocity)
+     */
+    @Override
+    public void sendNoteOn(int channel, int pitch, int velocity, long originNanos) {
+        Log.debug(Log.Midi(), "sendNoteOn c: %d p: %d v: %d", channel, pitch, velocity);
         try {
-            message.setMessage(ShortMessage.NOTE_ON, constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127));
-            sendMessage(message);
+            sendShortMessage(ShortMessage.NOTE_ON, constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127), originNanos);
         } catch (InvalidMidiDataException e) {
-            System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
+            Log.warn(Log.Midi(), "Note on not sent, invalid MIDI data c: %d p: %d v: %d", channel, pitch, velocity);
         }
     }
 
@@ -702,13 +830,21 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendNoteOff(int channel, int pitch, int velocity) {
-        System.out.println(String.format("sendNoteOff c: %s p: %s v: %s", channel, pitch, velocity));
-        ShortMessage message = new ShortMessage();
+        sendNoteOff(channel, pitch, velocity, 0);
+    }
+
+    /**
+     * Sends a NoteOff for an event that arrived at originNanos (System.nanoTime), or 0 for now.
+     *
+     * @see #sendNoteOff(int channel, int pitch, int velocity)
+     */
+    @Override
+    public void sendNoteOff(int channel, int pitch, int velocity, long originNanos) {
+        Log.debug(Log.Midi(), "sendNoteOff c: %d p: %d v: %d", channel, pitch, velocity);
         try {
-            message.setMessage(ShortMessage.NOTE_OFF, constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127));
-            sendMessage(message);
+            sendShortMessage(ShortMessage.NOTE_OFF, constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127), originNanos);
         } catch (InvalidMidiDataException e) {
-            System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
+            Log.warn(Log.Midi(), "Note off not sent, invalid MIDI data c: %d p: %d v: %d", channel, pitch, velocity);
         }
     }
 
@@ -753,10 +889,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void sendControllerChange(int channel, int number, int value) {
-        ShortMessage message = new ShortMessage();
         try {
-            message.setMessage(ShortMessage.CONTROL_CHANGE, constrain(channel, 0, 15), constrain(number, 0, 127), constrain(value, 0, 127));
-            sendMessage(message);
+            sendShortMessage(ShortMessage.CONTROL_CHANGE, constrain(channel, 0, 15), constrain(number, 0, 127), constrain(value, 0, 127), 0);
         } catch (InvalidMidiDataException e) {
             System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
         }
@@ -912,6 +1046,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      */
     @Override
     public void close() {
+        clearOutputs();
         closeAllMidiDevices();
     }
 
@@ -919,10 +1054,11 @@ public class StupidMonkeyMIDI implements MIDIIO {
 
     /**
      * Rescan for Midi Devices. This is autocalled once when the MidiBus starts up. It should be called again if you
-     * need to refresh the list of dataAvailable MidiDevices while your program is running.
+     * need to refresh the list of dataAvailable MidiDevices while your program is running. Only devices that weren't
+     * there last time are looked up; see MidiDeviceRegistry.
      */
     public static void findMidiDevices() {
-        availableDevices = MidiSystem.getMidiDeviceInfo();
+        MidiDeviceRegistry.refresh();
     }
 
     /**
@@ -988,33 +1124,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      * @return the MidiDevice.Info of the dataAvailable inputs.
      */
     public static MidiDevice.Info[] availableInputsMidiDeviceInfo() {
-        if (availableDevices == null) findMidiDevices();
-        MidiDevice device;
-
-        ArrayList<MidiDevice.Info> deviceInfos = new ArrayList<MidiDevice.Info>();
-
-        for (MidiDevice.Info info : availableDevices) {
-            try {
-                device = MidiSystem.getMidiDevice(info);
-                //This open close checks to make sure the announced device is truely dataAvailable
-                //There are many reports on Windows that some devices lie about their availability
-                //(For instance the Microsoft GS Wavetable Synth)
-                //But in theory I guess this could happen on any OS, so I'll just do it all the time.
-                // if(!device.isOpen()) {
-                // 	device.open();
-                // 	device.close();
-                // }
-                if (device.getMaxTransmitters() != 0) deviceInfos.add(info);
-            } catch (MidiUnavailableException e) {
-                //Device was unavailable which is fine, we only care about dataAvailable inputs
-            }
-        }
-
-        MidiDevice.Info[] devices = new MidiDevice.Info[deviceInfos.size()];
-
-        deviceInfos.toArray(devices);
-
-        return devices;
+        return MidiDeviceRegistry.inputs();
     }
 
     /**
@@ -1023,33 +1133,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      * @return the MidiDevice.Info of the dataAvailable output.
      */
     static MidiDevice.Info[] availableOutputsMidiDeviceInfo() {
-        if (availableDevices == null) findMidiDevices();
-        MidiDevice device;
-
-        ArrayList<MidiDevice.Info> devices_list = new ArrayList();
-
-        for (MidiDevice.Info availableDevice : availableDevices) {
-            try {
-                device = MidiSystem.getMidiDevice(availableDevice);
-                //This open close checks to make sure the announced device is truly dataAvailable
-                //There are many reports on Windows that some devices lie about their availability
-                //(For instance the Microsoft GS Wavetable Synth)
-                //But in theory I guess this could happen on any OS, so I'll just do it all the time.
-                // if(!device.isOpen()) {
-                // 	device.open();
-                // 	device.close();
-                // }
-                if (device.getMaxReceivers() != 0) devices_list.add(availableDevice);
-            } catch (MidiUnavailableException e) {
-                //Device was unavailable which is fine, we only care about dataAvailable output
-            }
-        }
-
-        MidiDevice.Info[] devices = new MidiDevice.Info[devices_list.size()];
-
-        devices_list.toArray(devices);
-
-        return devices;
+        return MidiDeviceRegistry.outputs();
     }
 
     /**
@@ -1058,32 +1142,7 @@ public class StupidMonkeyMIDI implements MIDIIO {
      * @return the MidiDevice.Info of the unavailable devices.
      */
     static MidiDevice.Info[] unavailableMidiDeviceInfo() {
-        if (availableDevices == null) findMidiDevices();
-        MidiDevice device;
-
-        ArrayList<MidiDevice.Info> unavailbleDeviceInfos = new ArrayList();
-
-        for (int i = 0; i < availableDevices.length; i++) {
-            try {
-                device = MidiSystem.getMidiDevice(availableDevices[i]);
-                //This open close checks to make sure the announced device is truely dataAvailable
-                //There are many reports on Windows that some devices lie about their availability
-                //(For instance the Microsoft GS Wavetable Synth)
-                //But in theory I guess this could happen on any OS, so I'll just do it all the time.
-                // if(!device.isOpen()) {
-                // 	device.open();
-                // 	device.close();
-                // }
-            } catch (MidiUnavailableException e) {
-                unavailbleDeviceInfos.add(availableDevices[i]);
-            }
-        }
-
-        MidiDevice.Info[] devices = new MidiDevice.Info[unavailbleDeviceInfos.size()];
-
-        unavailbleDeviceInfos.toArray(devices);
-
-        return devices;
+        return MidiDeviceRegistry.unavailable();
     }
 
 	/* -- Nested Classes -- */
@@ -1144,6 +1203,8 @@ public class StupidMonkeyMIDI implements MIDIIO {
 
         Receiver receiver;
 
+        MidiOutputLane lane;
+
         OutputDeviceContainer(MidiDevice device) {
             this.info = device.getDeviceInfo();
         }
@@ -0,0 +1,112 @@
+package com.seismic.queue
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+
+import scala.reflect.ClassTag
+
+/**
+  * A fixed ring of preallocated, mutable slots. A producer claims a sequence, fills in that slot and publishes it;
+  * RingBufferStages then follow the published sequences (and each other) and hand each slot to their handler.
+  * Nothing is allocated once the ring is built.
+  *
+  * Claiming is a single atomic increment, so the serial thread and the odd message injected from the UI can both
+  * publish without a lock. A producer never laps the slowest gating stage: next() waits, tryNext() gives up.
+  *
+  * @param capacity must be a power of two
+  */
+class RingBuffer[T](val capacity: Int,
+                    factory: () => T,
+                    producerWaitStrategy: WaitStrategy)(implicit classTag: ClassTag[T]) {
+
+  require(capacity > 0 && Integer.bitCount(capacity) == 1, s"Ring capacity $capacity must be a power of two")
+
+  private val mask = capacity - 1
+  private val slots = Array.fill(capacity)(factory())
+  private val published = new AtomicLongArray(capacity)
+  private val claimed = new AtomicLong(-1)
+  @volatile private var gatingSequences = Array[AtomicLong]()
+
+  for (i <- 0 until capacity) {
+    published.set(i, -1)
+  }
+
+  def addGatingSequence(sequence: AtomicLong): Unit = synchronized {
+    gatingSequences = gatingSequences :+ sequence
+  }
+
+  def get(sequence: Long): T = {
+    slots(indexOf(sequence))
+  }
+
+  /**
+    * Claims the next slot, waiting for the slowest stage to free it up if the ring is full.
+    */
+  def next(): Long = {
+    val sequence = claimed.incrementAndGet()
+    var idleCount = 0
+    while (sequence - capacity > minimumGatingSequence) {
+      idleCount += 1
+      producerWaitStrategy.idle(idleCount)
+    }
+    sequence
+  }
+
+  /**
+    * Claims the next slot, or returns -1 without waiting if the ring is full.
+    */
+  def tryNext(): Long = {
+    var sequence = -1L
+    var done = false
+    while (!done) {
+      val current = claimed.get
+      if (current + 1 - capacity > minimumGatingSequence) {
+        done = true
+      } else if (claimed.compareAndSet(current, current + 1)) {
+        sequence = current + 1
+        done = true
+      }
+    }
+    sequence
+  }
+
+  /**
+    * Makes a claimed slot visible to the first stage. The ordered store means a stage that sees the sequence also
+    * sees everything written into the slot before it.
+    */
+  def publish(sequence: Long): Unit = {
+    published.lazySet(indexOf(sequence), sequence)
+  }
+
+  /**
+    * @return the highest sequence from `from` onwards that's published with no gaps, or from - 1 if there's none
+    */
+  def highestPublished(from: Long): Long = {
+    val claimedSequence = claimed.get
+    var sequence = from
+    while (sequence <= claimedSequence && published.get(indexOf(sequence)) == sequence) {
+      sequence += 1
+    }
+    sequence - 1
+  }
+
+  /**
+    * How many claimed slots the slowest stage has yet to get through.
+    */
+  def depth: Long = {
+    val claimedSequence = claimed.get
+    Math.max(0, claimedSequence - Math.min(claimedSequence, minimumGatingSequence))
+  }
+
+  private def minimumGatingSequence = {
+    val sequences = gatingSequences
+    var minimum = Long.MaxValue
+    var i = 0
+    while (i < sequences.length) {
+      minimum = Math.min(minimum, sequences(i).get)
+      i += 1
+    }
+    minimum
+  }
+
+  private def indexOf(sequence: Long) = (sequence & mask).toInt
+}
@@ -0,0 +1,75 @@
+package com.seismic.queue
+
+import java.util.concurrent.atomic.AtomicLong
+
+import com.seismic.log.Log
+
+/**
+  * One consumer of a RingBuffer, running on its own thread. The first stage (no upstream) follows what producers
+  * have published; every later stage only sees slots the stage before it has finished with, so a slot flows
+  * through the stages in order without being copied.
+  */
+class RingBufferStage[T](val name: String,
+                         ring: RingBuffer[T],
+                         upstream: Option[RingBufferStage[T]],
+                         waitStrategy: WaitStrategy,
+                         handler: (T) => Unit) extends Runnable {
+
+  val sequence = new AtomicLong(-1)
+  @volatile private var running = false
+  @volatile private var thread: Thread = _
+
+  ring.addGatingSequence(sequence)
+
+  def start(): Unit = {
+    running = true
+    val thread = new Thread(this, s"seismic-$name")
+    thread.setDaemon(true)
+    this.thread = thread
+    thread.start()
+  }
+
+  def stop(): Unit = {
+    running = false
+  }
+
+  /**
+    * Waits up to millis for the stage's thread to finish the event it's handling and exit, after stop.
+    */
+  def join(millis: Long): Unit = {
+    val thread = this.thread
+    if (thread != null && (thread ne Thread.currentThread())) {
+      thread.join(millis)
+    }
+  }
+
+  override def run(): Unit = {
+    var next = sequence.get + 1
+    var idleCount = 0
+    while (running) {
+      val available = availableSequence(next)
+      if (available < next) {
+        if (idleCount < Int.MaxValue) idleCount += 1
+        waitStrategy.idle(idleCount)
+      } else {
+        idleCount = 0
+        while (next <= available) {
+          try {
+            handler(ring.get(next))
+          } catch {
+            case e: Exception => Log.error(Log.General, "Stage %s failed to handle an event", name, e)
+          }
+          next += 1
+        }
+        sequence.lazySet(available)
+      }
+    }
+  }
+
+  private def availableSequence(next: Long) = {
+    upstream match {
+      case Some(stage) => stage.sequence.get
+      case None => ring.highestPublished(next)
+    }
+  }
+}
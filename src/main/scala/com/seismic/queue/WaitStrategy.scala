@@ -0,0 +1,56 @@
+package com.seismic.queue
+
+import java.util.concurrent.locks.LockSupport
+
+/**
+  * What a RingBufferStage (or a producer waiting on a full ring) does when there's nothing for it yet.
+  * Busy-spin has the lowest latency and burns a core, yield is polite to other threads, park gives the CPU back.
+  */
+trait WaitStrategy {
+  /**
+    * @param idleCount how many times in a row the caller has come up empty, starting at 1
+    */
+  def idle(idleCount: Int): Unit
+}
+
+object WaitStrategy {
+  private val SpinTries = 100
+
+  object BusySpin extends WaitStrategy {
+    override def idle(idleCount: Int): Unit = {}
+  }
+
+  object Yielding extends WaitStrategy {
+    override def idle(idleCount: Int): Unit = {
+      if (idleCount > SpinTries) {
+        Thread.`yield`()
+      }
+    }
+  }
+
+  case class Parking(parkNanos: Long = 50000) extends WaitStrategy {
+    override def idle(idleCount: Int): Unit = {
+      if (idleCount > SpinTries * 2) {
+        LockSupport.parkNanos(parkNanos)
+      } else if (idleCount > SpinTries) {
+        Thread.`yield`()
+      }
+    }
+  }
+
+  def named(name: String): WaitStrategy = {
+    name match {
+      case "spin" => BusySpin
+      case "yield" => Yielding
+      case "park" => Parking()
+      case _ => throw new IllegalArgumentException(s"Unknown wait strategy $name, expected spin, yield or park")
+    }
+  }
+
+  /**
+    * The strategy named by the system property seismic.wait.[stage], falling back to seismic.wait, then to park.
+    */
+  def forStage(stage: String): WaitStrategy = {
+    named(System.getProperty(s"seismic.wait.$stage", System.getProperty("seismic.wait", "park")))
+  }
+}
@@ -0,0 +1,183 @@
+package com.seismic.serial
+
+import java.util.concurrent.atomic.AtomicLong
+
+import com.seismic.messages.{TriggerEvent, Triggers}
+
+/**
+  * The binary serial protocol, negotiated with "MODE,BINARY": the host writes that line, the device echoes it back
+  * as a line and then sends fixed 6 byte frames instead of ASCII.
+  *
+  *   0  Sync       0xA5
+  *   1  Type, id   TriggerEvent kind << 5 | trigger id (0 - 31)
+  *   2  Values     trigger value bits 9-2
+  *   3  Values     trigger value bits 1-0, handle value bits 9-4
+  *   4  Values     handle value bits 3-0, flags (bit 0: finger trigger)
+  *   5  Checksum   CRC-8 (polynomial 0x07) of bytes 1-4
+  *
+  * A patch frame carries the patch number in the trigger value. A hit is 6 bytes instead of about 20 in ASCII, and
+  * decoding it is a few shifts with no number or name parsing.
+  */
+object BinaryFrameDecoder {
+  val FrameLength = 6
+  val Sync = 0xA5.toByte
+  val FingerTriggerFlag = 0x1
+  val ModeLine = "MODE,BINARY"
+
+  private val bad = new AtomicLong
+
+  private val crcTable = Array.tabulate(256) { i =>
+    var crc = i
+    for (_ <- 0 until 8) {
+      crc = if ((crc & 0x80) != 0) (crc << 1) ^ 0x07 else crc << 1
+    }
+    (crc & 0xFF).toByte
+  }
+
+  def checksum(bytes: Array[Byte], offset: Int): Byte = {
+    var crc = 0
+    var i = offset + 1
+    while (i < offset + FrameLength - 1) {
+      crc = crcTable((crc ^ bytes(i)) & 0xFF) & 0xFF
+      i += 1
+    }
+    crc.toByte
+  }
+
+  def isFrame(bytes: Array[Byte], offset: Int): Boolean = {
+    bytes(offset) == Sync && bytes(offset + FrameLength - 1) == checksum(bytes, offset)
+  }
+
+  /**
+    * Writes one frame into dest(offset until offset + FrameLength).
+    */
+  def encode(kind: Int, triggerId: Int, triggerValue: Int, handleValue: Int, flags: Int,
+             dest: Array[Byte], offset: Int): Unit = {
+    val trigger = triggerValue & 0x3FF
+    val handle = handleValue & 0x3FF
+    dest(offset) = Sync
+    dest(offset + 1) = ((kind & 0x7) << 5 | (triggerId & 0x1F)).toByte
+    dest(offset + 2) = (trigger >> 2).toByte
+    dest(offset + 3) = ((trigger & 0x3) << 6 | handle >> 4).toByte
+    dest(offset + 4) = ((handle & 0xF) << 4 | (flags & 0xF)).toByte
+    dest(offset + 5) = checksum(dest, offset)
+  }
+
+  /**
+    * Frames that passed the checksum but couldn't be decoded: an unknown kind, or a trigger id nothing's registered.
+    */
+  def badFrames = bad.get
+
+  /**
+    * Unpacks a frame that's already been checked with isFrame into event.
+    *
+    * @return false, counted in badFrames, if the frame is for a kind of event we don't know or a trigger that isn't
+    *         registered, whether it's corrupt in a way the checksum missed or from a board with more triggers than
+    *         Triggers knows.
+    */
+  def decode(bytes: Array[Byte], offset: Int, event: TriggerEvent): Boolean = {
+    event.reset()
+    val typeAndId = bytes(offset + 1) & 0xFF
+    val b2 = bytes(offset + 2) & 0xFF
+    val b3 = bytes(offset + 3) & 0xFF
+    val b4 = bytes(offset + 4) & 0xFF
+    val kind = typeAndId >> 5
+    val triggerValue = b2 << 2 | b3 >> 6
+    val handleValue = (b3 & 0x3F) << 4 | b4 >> 4
+    val flags = b4 & 0xF
+
+    val triggerId = typeAndId & 0x1F
+
+    kind match {
+      case TriggerEvent.TriggerOn | TriggerEvent.TriggerOff if triggerId >= Triggers.registered =>
+        bad.incrementAndGet()
+        return false
+      case TriggerEvent.TriggerOn =>
+        event.triggerId = triggerId
+        event.triggerValue = triggerValue
+        event.handleValue = handleValue
+        event.fingerTrigger = (flags & FingerTriggerFlag) != 0
+      case TriggerEvent.TriggerOff =>
+        event.triggerId = triggerId
+      case TriggerEvent.Patch =>
+        event.patch = triggerValue
+      case TriggerEvent.NextPhrase | TriggerEvent.PreviousPhrase =>
+      case _ =>
+        bad.incrementAndGet()
+        return false
+    }
+    event.kind = kind
+    true
+  }
+}
+
+/**
+  * Pulls binary frames out of whatever bytes the serial port hands over, however they're split up. Anything that
+  * isn't a whole frame with a good sync byte and checksum is skipped a byte at a time, so a corrupted or dropped
+  * byte costs at most the frame it was in before decoding lines back up with the next sync byte.
+  */
+class BinaryFrameDecoder {
+  import BinaryFrameDecoder._
+
+  private val pending = new Array[Byte](FrameLength * 64)
+  private var start = 0
+  private var end = 0
+  private var skipped = 0L
+
+  /**
+    * Bytes thrown away while looking for the next good frame.
+    */
+  def skippedBytes = skipped
+
+  /**
+    * @return how many of src(offset until offset + length) were taken; call nextFrame until it's false, then offer
+    *         the rest.
+    */
+  def offer(src: Array[Byte], offset: Int, length: Int): Int = {
+    if (start > 0) {
+      System.arraycopy(pending, start, pending, 0, end - start)
+      end -= start
+      start = 0
+    }
+    val toCopy = Math.min(length, pending.length - end)
+    System.arraycopy(src, offset, pending, end, toCopy)
+    end += toCopy
+    toCopy
+  }
+
+  /**
+    * Skips to the next good frame, if there's a whole one.
+    *
+    * @return false once there isn't a whole frame left.
+    */
+  def hasFrame: Boolean = {
+    while (end - start >= FrameLength) {
+      if (isFrame(pending, start)) {
+        return true
+      }
+      start += 1
+      skipped += 1
+    }
+    false
+  }
+
+  /**
+    * Copies the next good frame into dest.
+    *
+    * @return false once there isn't a whole frame left.
+    */
+  def nextFrame(dest: Array[Byte]): Boolean = {
+    if (hasFrame) {
+      System.arraycopy(pending, start, dest, 0, FrameLength)
+      start += FrameLength
+      true
+    } else {
+      false
+    }
+  }
+
+  def reset(): Unit = {
+    start = 0
+    end = 0
+  }
+}
@@ -0,0 +1,178 @@
+package com.seismic.serial;
+
+/**
+ * A fixed-size ring of bytes with one writer (the serial port's event thread) and one reader (whoever frames lines
+ * out of it). Nothing is allocated or locked after construction: the writer only moves head, the reader only moves
+ * tail, and each publishes its position with a volatile write. clear, from any thread, only asks the reader to drop
+ * everything written so far; the reader does that the next time it calls available or nextFrameLength, so a frame
+ * it's partway through reading is never pulled out from under it.
+ * <p>
+ * Lines are found in place. nextFrameLength remembers how far it has already looked, so a line that arrives in
+ * several pieces is scanned once. If the reader falls a whole ring behind, incoming bytes are dropped and counted in
+ * overflowedBytes instead of the ring growing. If the ring fills with bytes that hold no delimiter at all (line noise,
+ * the wrong baud rate, binary data read as text), no frame could ever be found and nothing more could be written, so
+ * the reader throws them away and counts a resync.
+ */
+public class ByteRing {
+    private final byte[] bytes;
+    private final int mask;
+
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile long overflowedBytes = 0;
+    private volatile long resyncs = 0;
+    // where clear asked the reader to skip to
+    private volatile long clearTo = 0;
+
+    // reader only
+    private long scanned = 0;
+
+    /**
+     * @param capacity must be a power of two
+     */
+    public ByteRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Byte ring capacity " + capacity + " must be a power of two");
+        }
+        bytes = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /* -- writer -- */
+
+    /**
+     * Copies as much of src as there's room for.
+     *
+     * @return how many bytes were written; the rest were dropped and added to overflowedBytes.
+     */
+    public int write(byte[] src, int offset, int length) {
+        long currentHead = head;
+        int free = bytes.length - (int) (currentHead - tail);
+        int toWrite = Math.min(free, length);
+
+        int index = (int) (currentHead & mask);
+        int firstPart = Math.min(toWrite, bytes.length - index);
+        System.arraycopy(src, offset, bytes, index, firstPart);
+        System.arraycopy(src, offset + firstPart, bytes, 0, toWrite - firstPart);
+
+        if (toWrite < length) {
+            overflowedBytes = overflowedBytes + (length - toWrite);
+        }
+        head = currentHead + toWrite;
+        return toWrite;
+    }
+
+    public long overflowedBytes() {
+        return overflowedBytes;
+    }
+
+    /**
+     * Whether there's anything the reader hasn't read or been asked to clear. Safe from any thread.
+     */
+    public boolean hasUnread() {
+        return head > Math.max(tail, clearTo);
+    }
+
+    /* -- reader -- */
+
+    public int available() {
+        return (int) (head - readerTail());
+    }
+
+    /**
+     * Times a full ring without a delimiter was thrown away to start over.
+     */
+    public long resyncs() {
+        return resyncs;
+    }
+
+    /**
+     * @return the length of the next frame up to and including delimiter, or 0 if there isn't a whole one yet.
+     */
+    public int nextFrameLength(int delimiter) {
+        long currentTail = readerTail();
+        long currentHead = head;
+        byte needle = (byte) delimiter;
+        long position = Math.max(scanned, currentTail);
+        while (position < currentHead) {
+            if (bytes[(int) (position & mask)] == needle) {
+                scanned = currentTail;
+                return (int) (position - currentTail + 1);
+            }
+            position++;
+        }
+        if (position - currentTail >= bytes.length) {
+            // a whole ring and no delimiter: it'll never frame, and the writer can't add anything after it
+            tail = position;
+            resyncs = resyncs + 1;
+        }
+        scanned = position;
+        return 0;
+    }
+
+    /**
+     * The byte at offset from the start of the unread bytes, for reading a frame where it lies.
+     */
+    public byte get(int offset) {
+        return bytes[(int) ((tail + offset) & mask)];
+    }
+
+    /**
+     * Copies the first length unread bytes into dest and consumes them.
+     */
+    public void read(byte[] dest, int destOffset, int length) {
+        long currentTail = tail;
+        int index = (int) (currentTail & mask);
+        int firstPart = Math.min(length, bytes.length - index);
+        System.arraycopy(bytes, index, dest, destOffset, firstPart);
+        System.arraycopy(bytes, 0, dest, destOffset + firstPart, length - firstPart);
+        tail = currentTail + length;
+    }
+
+    /**
+     * Consumes length bytes without copying them.
+     */
+    public void skip(int length) {
+        tail = tail + length;
+    }
+
+    /**
+     * Moves tail past anything clear asked to drop. Only the reader calls this, before it looks at what's there.
+     */
+    private long readerTail() {
+        long currentTail = tail;
+        long cleared = clearTo;
+        if (cleared > currentTail) {
+            tail = cleared;
+            return cleared;
+        }
+        return currentTail;
+    }
+
+    /* -- any thread -- */
+
+    /**
+     * @return the most recently written byte, or -1 if there are no unread bytes.
+     */
+    public int last() {
+        long currentHead = head;
+        if (currentHead <= Math.max(tail, clearTo)) {
+            return -1;
+        }
+        return bytes[(int) ((currentHead - 1) & mask)] & 0xFF;
+    }
+
+    /**
+     * Asks the reader to drop everything written so far, the next time it looks.
+     */
+    public void clear() {
+        long currentHead = head;
+        if (currentHead > clearTo) {
+            clearTo = currentHead;
+        }
+    }
+}
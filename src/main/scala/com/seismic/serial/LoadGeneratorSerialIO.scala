@@ -0,0 +1,327 @@
+package com.seismic.serial
+
+import java.nio.charset.StandardCharsets.US_ASCII
+import java.util.Random
+import java.util.concurrent.locks.LockSupport
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
+
+import com.seismic.messages.{TriggerEvent, Triggers}
+import com.seismic.metrics.TriggerLatency
+import com.seismic.midi.MidiOutputLane
+
+/**
+  * What a LoadGeneratorSerialIO sends.
+  *
+  * @param rate     messages a second; every hit is an on and an off, so half as many hits.
+  * @param triggers how many pads to hit: KICK, SNARE, then PAD3 and up.
+  * @param seed     fixes the sequence of pads and values, so runs can be compared.
+  * @param finger   the fraction of hits that are finger triggers.
+  * @param sweep    how the handle moves: random, ramp (0 to 1023 once a second), sine, or a fixed value.
+  * @param burst    none to spread hits out evenly, flam for two hits on one pad at once, roll for eight; the average
+  *                 rate's the same.
+  * @param seconds  stop after this long, or 0 to run until exit.
+  * @param protocol ascii, or binary to send binary frames after a MODE,BINARY line.
+  */
+case class LoadProfile(rate: Int = 1000,
+                       triggers: Int = 2,
+                       seed: Long = 1,
+                       finger: Double = 0,
+                       sweep: String = "random",
+                       burst: String = "none",
+                       seconds: Int = 0,
+                       protocol: String = "ascii") {
+
+  require(rate > 0, "rate must be positive")
+  require(triggers > 0 && triggers <= Triggers.MaxTriggers, s"triggers must be from 1 to ${Triggers.MaxTriggers}")
+  require(Seq("random", "ramp", "sine").contains(sweep) || isHandleValue(sweep),
+          s"Unknown sweep $sweep, expected random, ramp, sine or a handle value from 0 to 1023")
+
+  require(protocol == "ascii" || protocol == "binary", s"Unknown protocol $protocol, expected ascii or binary")
+
+  def binary = protocol == "binary"
+
+  def burstSize = burst match {
+    case "none" => 1
+    case "flam" => 2
+    case "roll" => 8
+    case _ => throw new IllegalArgumentException(s"Unknown burst $burst, expected none, flam or roll")
+  }
+
+  // frames only have room for four digits, and the handle never sends more than 1023
+  private def isHandleValue(s: String) = {
+    s.nonEmpty && s.length <= 4 && s.forall { c => c >= '0' && c <= '9' } && s.toInt <= 1023
+  }
+}
+
+object LoadProfile {
+  val Prefix = "load:"
+
+  /**
+    * load:rate=20000,triggers=4,seed=7,finger=0.25,sweep=ramp,burst=flam,seconds=30,protocol=binary; anything left out
+    * keeps its default.
+    */
+  def forPort(port: String): LoadProfile = {
+    val settings = port.substring(Prefix.length).split(",").filter { s => s.nonEmpty }.map { setting =>
+      setting.split("=") match {
+        case Array(key, value) => key.trim -> value.trim
+        case _ => throw new IllegalArgumentException(s"Expected name=value for load setting $setting")
+      }
+    }.toMap
+
+    val defaults = LoadProfile()
+    LoadProfile(rate = settings.get("rate").map { _.toInt }.getOrElse(defaults.rate),
+                triggers = settings.get("triggers").map { _.toInt }.getOrElse(defaults.triggers),
+                seed = settings.get("seed").map { _.toLong }.getOrElse(defaults.seed),
+                finger = settings.get("finger").map { _.toDouble }.getOrElse(defaults.finger),
+                sweep = settings.getOrElse("sweep", defaults.sweep),
+                burst = settings.getOrElse("burst", defaults.burst),
+                seconds = settings.get("seconds").map { _.toInt }.getOrElse(defaults.seconds),
+                protocol = settings.getOrElse("protocol", defaults.protocol))
+  }
+}
+
+/**
+  * A serial port that sends as much load as it's told to, for finding where SerialMonitor and Seismic saturate.
+  * Messages are written into the same ByteRing a real port uses, on a pace set by the profile, from one thread
+  * like a real port's event thread. If the pipeline can't keep up, the generator falls behind its schedule
+  * rather than piling messages up; every second it prints what it managed:
+  *
+  *   target and sent   messages a second asked for and actually sent
+  *   behind            messages the generator is behind its schedule
+  *   dispatched        messages a second that made it through to Seismic
+  *   p99 disp/queued   latency from arrival to dispatch and to being queued on the MIDI output, over the last second
+  *   dropped           bytes the serial ring overflowed by, and messages the MIDI output lanes dropped
+  *
+  * Each line covers only that second: the reporter compares snapshots of TriggerLatency's histograms rather than
+  * resetting them, so the running report everything else prints is left alone.
+  */
+class LoadGeneratorSerialIO(profile: LoadProfile) extends SerialIO {
+
+  private val ring = new ByteRing(StandardSerialIO.RING_CAPACITY)
+  private val random = new Random(profile.seed)
+  private val message = new Array[Byte](SerialFrame.MaxLength)
+  private val triggerNames = (0 until profile.triggers).map {
+    case 0 => "KICK"
+    case 1 => "SNARE"
+    case i => s"PAD${i + 1}"
+  }.toArray
+  private val names = triggerNames.map { name => name.getBytes(US_ASCII) }
+  // what the trigger path knows each pad as, which binary frames carry; registered here since no board names them
+  private val triggerIds = triggerNames.map { name => Triggers.register(name) }
+  private val burstSize = profile.burstSize
+  private val intervalNanos = 1000000000d / profile.rate
+
+  @volatile private var lastRead = 0L
+  @volatile private var sent = 0L
+  @volatile private var behind = 0L
+  private var pendingOff = -1
+  private var elapsedNanos = 0L
+
+  override def open(serialListener: SerialListener): Unit = {
+    val thread = new Thread(new Runnable {
+      override def run(): Unit = generate(serialListener)
+    }, "seismic-load")
+    thread.setDaemon(true)
+    thread.start()
+    startReporting()
+  }
+
+  override def readStringUntil(inByte: Int): String = {
+    val length = ring.nextFrameLength(inByte)
+    if (length == 0) {
+      null
+    } else {
+      val bytes = new Array[Byte](length)
+      ring.read(bytes, 0, length)
+      new String(bytes, US_ASCII)
+    }
+  }
+
+  override def nextLineLength(inByte: Int): Int = ring.nextFrameLength(inByte)
+
+  override def readBytesUntil(inByte: Int, dest: Array[Byte]): Int = {
+    val length = ring.nextFrameLength(inByte)
+    if (length > dest.length) {
+      -1
+    } else {
+      ring.read(dest, 0, length)
+      length
+    }
+  }
+
+  override def readBytes(dest: Array[Byte]): Int = {
+    val length = Math.min(ring.available(), dest.length)
+    ring.read(dest, 0, length)
+    length
+  }
+
+  override def write(src: String): Unit = {}
+
+  override def lastReadNanos(): Long = lastRead
+
+  private def generate(serialListener: SerialListener): Unit = {
+    if (profile.binary) {
+      val modeLine = (BinaryFrameDecoder.ModeLine + "\n").getBytes(US_ASCII)
+      ring.write(modeLine, 0, modeLine.length)
+      serialListener.dataAvailable()
+    }
+
+    val startNanos = System.nanoTime()
+    val endNanos = if (profile.seconds > 0) startNanos + profile.seconds * 1000000000L else Long.MaxValue
+    var count = 0L
+    while (System.nanoTime() < endNanos) {
+      val due = startNanos + (count * intervalNanos).toLong
+      waitUntil(due)
+      elapsedNanos = due - startNanos
+
+      count += writeBurst()
+      lastRead = System.nanoTime()
+      serialListener.dataAvailable()
+
+      sent = count
+      behind = Math.max(0, ((System.nanoTime() - startNanos) / intervalNanos).toLong - count)
+    }
+  }
+
+  /**
+    * Releases the last pad hit, then hits a random pad burstSize times in a row, releasing it between hits; the last
+    * hit's off waits for the next burst.
+    *
+    * @return how many messages were written.
+    */
+  private def writeBurst(): Int = {
+    var written = 0
+    if (pendingOff >= 0) {
+      ring.write(message, 0, offMessage(pendingOff))
+      written += 1
+    }
+    val index = random.nextInt(names.length)
+    var i = 0
+    while (i < burstSize) {
+      if (i > 0) {
+        ring.write(message, 0, offMessage(index))
+        written += 1
+      }
+      ring.write(message, 0, onMessage(index))
+      written += 1
+      i += 1
+    }
+    pendingOff = index
+    written
+  }
+
+  private def offMessage(index: Int): Int = {
+    if (profile.binary) {
+      encodeBinary(TriggerEvent.TriggerOff, triggerIds(index), 0, 0, fingerTrigger = false)
+    } else {
+      var length = append(0, "T,OFF,")
+      length = append(length, names(index))
+      append(length, "\n")
+    }
+  }
+
+  private def onMessage(index: Int): Int = {
+    val triggerValue = 100 + random.nextInt(924)
+    val handleValue = nextHandleValue()
+    val fingerTrigger = random.nextDouble() < profile.finger
+    if (profile.binary) {
+      encodeBinary(TriggerEvent.TriggerOn, triggerIds(index), triggerValue, handleValue, fingerTrigger)
+    } else {
+      var length = append(0, "T,ON,")
+      length = append(length, names(index))
+      length = append(length, ",")
+      length = appendNumber(length, triggerValue)
+      length = append(length, ",")
+      length = appendNumber(length, handleValue)
+      length = append(length, if (fingerTrigger) ",1\n" else ",0\n")
+      length
+    }
+  }
+
+  private def nextHandleValue(): Int = {
+    // how far through the current second the generator is, by its schedule
+    val phase = (elapsedNanos % 1000000000L).toDouble / 1000000000L
+    profile.sweep match {
+      case "random" => random.nextInt(1024)
+      case "ramp" => Math.min((phase * 1024).toInt, 1023)
+      case "sine" => (511.5 + 511.5 * Math.sin(phase * 2 * Math.PI)).toInt
+      case fixed => fixed.toInt
+    }
+  }
+
+  private def encodeBinary(kind: Int, triggerId: Int, triggerValue: Int, handleValue: Int,
+                           fingerTrigger: Boolean): Int = {
+    val flags = if (fingerTrigger) BinaryFrameDecoder.FingerTriggerFlag else 0
+    BinaryFrameDecoder.encode(kind, triggerId, triggerValue, handleValue, flags, message, 0)
+    BinaryFrameDecoder.FrameLength
+  }
+
+  private def append(at: Int, s: String): Int = {
+    var i = 0
+    while (i < s.length) {
+      message(at + i) = s.charAt(i).toByte
+      i += 1
+    }
+    at + s.length
+  }
+
+  private def append(at: Int, bytes: Array[Byte]): Int = {
+    System.arraycopy(bytes, 0, message, at, bytes.length)
+    at + bytes.length
+  }
+
+  private def appendNumber(at: Int, value: Int): Int = {
+    val digits = if (value >= 1000) 4 else if (value >= 100) 3 else if (value >= 10) 2 else 1
+    var remaining = value
+    var i = digits - 1
+    while (i >= 0) {
+      message(at + i) = ('0' + remaining % 10).toByte
+      remaining /= 10
+      i -= 1
+    }
+    at + digits
+  }
+
+  private def waitUntil(dueNanos: Long): Unit = {
+    var remaining = dueNanos - System.nanoTime()
+    while (remaining > 50000) {
+      LockSupport.parkNanos(remaining - 50000)
+      remaining = dueNanos - System.nanoTime()
+    }
+    while (remaining > 0) {
+      remaining = dueNanos - System.nanoTime()
+    }
+  }
+
+  private def startReporting(): Unit = {
+    val reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, "seismic-load-report")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    println("%9s %9s %9s %11s %12s %11s %12s %12s".format(
+      "target/s", "sent/s", "behind", "dispatched", "p99 disp us", "p99 queued", "ring drops", "midi drops"))
+    reporter.scheduleAtFixedRate(new Runnable {
+      private var lastSent = 0L
+      private var lastDispatched = TriggerLatency.histogram(TriggerLatency.Dispatched).snapshot
+      private var lastMidiQueued = TriggerLatency.histogram(TriggerLatency.MidiQueued).snapshot
+
+      override def run(): Unit = {
+        val sentNow = sent
+        val dispatchedNow = TriggerLatency.histogram(TriggerLatency.Dispatched).snapshot
+        val midiQueuedNow = TriggerLatency.histogram(TriggerLatency.MidiQueued).snapshot
+        val dispatched = dispatchedNow.since(lastDispatched)
+        val midiQueued = midiQueuedNow.since(lastMidiQueued)
+        println("%9d %9d %9d %11d %12.1f %11.1f %12d %12d".format(
+          profile.rate, sentNow - lastSent, behind, dispatched.count,
+          dispatched.valueAtPercentile(99) / 1000d, midiQueued.valueAtPercentile(99) / 1000d,
+          ring.overflowedBytes(), MidiOutputLane.totalDropped))
+        lastSent = sentNow
+        lastDispatched = dispatchedNow
+        lastMidiQueued = midiQueuedNow
+      }
+    }, 1, 1, TimeUnit.SECONDS)
+  }
+}
@@ -0,0 +1,116 @@
+package com.seismic.serial
+
+import java.io.File
+import java.util.concurrent.locks.LockSupport
+
+import com.seismic.log.Log
+
+object ReplaySerialIO {
+  val Prefix = "replay:"
+
+  /**
+    * replay:path plays a recording in real time, replay:path@4 at four times the speed, replay:path@max as fast as
+    * it can be read.
+    */
+  def forPort(port: String): ReplaySerialIO = {
+    val spec = port.substring(Prefix.length)
+    val at = spec.lastIndexOf('@')
+    if (at < 0) {
+      new ReplaySerialIO(new File(spec), 1)
+    } else {
+      val speed = spec.substring(at + 1) match {
+        case "max" => 0d
+        case s => s.toDouble
+      }
+      new ReplaySerialIO(new File(spec.substring(0, at)), speed)
+    }
+  }
+}
+
+/**
+  * Plays a SerialLog back as if it were the port it was recorded from: each read arrives with the same spacing as
+  * the original, divided by speed, and goes through the same ring and framing as StandardSerialIO. A speed of 0
+  * doesn't wait at all. Anything written to the port is ignored.
+  */
+class ReplaySerialIO(file: File, speed: Double) extends SerialIO {
+
+  private val ring = new ByteRing(StandardSerialIO.RING_CAPACITY)
+  private val chunk = new Array[Byte](StandardSerialIO.RING_CAPACITY)
+  @volatile private var lastRead = 0L
+
+  override def open(serialListener: SerialListener): Unit = {
+    val thread = new Thread(new Runnable {
+      override def run(): Unit = replay(serialListener)
+    }, "seismic-replay")
+    thread.setDaemon(true)
+    thread.start()
+  }
+
+  override def readStringUntil(inByte: Int): String = {
+    val length = ring.nextFrameLength(inByte)
+    if (length == 0) {
+      null
+    } else {
+      val bytes = new Array[Byte](length)
+      ring.read(bytes, 0, length)
+      new String(bytes)
+    }
+  }
+
+  override def nextLineLength(inByte: Int): Int = ring.nextFrameLength(inByte)
+
+  override def readBytesUntil(inByte: Int, dest: Array[Byte]): Int = {
+    val length = ring.nextFrameLength(inByte)
+    if (length > dest.length) {
+      -1
+    } else {
+      ring.read(dest, 0, length)
+      length
+    }
+  }
+
+  override def readBytes(dest: Array[Byte]): Int = {
+    val length = Math.min(ring.available(), dest.length)
+    ring.read(dest, 0, length)
+    length
+  }
+
+  override def write(src: String): Unit = {}
+
+  override def lastReadNanos(): Long = lastRead
+
+  private def replay(serialListener: SerialListener): Unit = {
+    val reader = new SerialLogReader(file)
+    val startNanos = System.nanoTime()
+    var firstNanos = 0L
+    var reads = 0L
+    var bytes = 0L
+
+    var length = reader.next(chunk)
+    while (length >= 0) {
+      if (reads == 0) {
+        firstNanos = reader.nanos
+      }
+      if (speed > 0) {
+        waitUntil(startNanos + ((reader.nanos - firstNanos) / speed).toLong)
+      }
+      ring.write(chunk, 0, length)
+      lastRead = System.nanoTime()
+      serialListener.dataAvailable()
+
+      reads += 1
+      bytes += length
+      length = reader.next(chunk)
+    }
+    reader.close()
+    Log.info(Log.Serial, "Replayed %d reads, %d bytes, in %d ms", reads, bytes, (System.nanoTime() - startNanos) / 1000000)
+  }
+
+  private def waitUntil(dueNanos: Long): Unit = {
+    var remaining = dueNanos - System.nanoTime()
+    while (remaining > 0) {
+      LockSupport.parkNanos(remaining)
+      remaining = dueNanos - System.nanoTime()
+    }
+  }
+}
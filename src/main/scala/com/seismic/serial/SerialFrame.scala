@@ -0,0 +1,45 @@
+package com.seismic.serial
+
+import com.seismic.messages.TriggerEvent
+
+object SerialFrame {
+  val MaxLength = 128
+}
+
+/**
+  * A slot in the SerialMonitor's ring: the raw bytes of one line from the serial port, the event they parse to, and
+  * the System.nanoTime it reached each stage (0 if it never did).
+  */
+class SerialFrame {
+  val bytes = new Array[Byte](SerialFrame.MaxLength)
+  var length = 0
+  var binary = false
+  val event = new TriggerEvent
+
+  var readNanos = 0L
+  var framedNanos = 0L
+  var parsedNanos = 0L
+  var dispatchedNanos = 0L
+  var midiQueuedNanos = 0L
+
+  def set(source: Array[Byte], sourceLength: Int, binary: Boolean, readNanos: Long, framedNanos: Long): Unit = {
+    val length = Math.min(sourceLength, bytes.length)
+    System.arraycopy(source, 0, bytes, 0, length)
+    filled(length, binary, readNanos, framedNanos)
+  }
+
+  /**
+    * For a frame whose bytes were read straight into bytes. A length of 0 is a frame with nothing to parse.
+    */
+  def filled(length: Int, binary: Boolean, readNanos: Long, framedNanos: Long): Unit = {
+    this.length = length
+    this.binary = binary
+    this.readNanos = readNanos
+    this.framedNanos = framedNanos
+    parsedNanos = 0
+    dispatchedNanos = 0
+    midiQueuedNanos = 0
+  }
+
+  def asString = new String(bytes, 0, length).trim
+}
@@ -4,4 +4,32 @@ public interface SerialIO {
     void open(SerialListener serialListener);
 
     String readStringUntil(int inByte);
+
+    /**
+     * Copies whatever has arrived, up to dest.length bytes, into dest.
+     *
+     * @return the number of bytes copied.
+     */
+    int readBytes(byte[] dest);
+
+    void write(String src);
+
+    /**
+     * How long the next line is, without taking it, so it can be read straight into wherever it's going.
+     *
+     * @return the number of bytes up to and including inByte, or 0 if there's no complete line yet.
+     */
+    int nextLineLength(int inByte);
+
+    /**
+     * Copies the bytes up to and including inByte into dest without allocating.
+     *
+     * @return the number of bytes copied, 0 if there's no complete line yet, or -1 if the line doesn't fit in dest.
+     */
+    int readBytesUntil(int inByte, byte[] dest);
+
+    /**
+     * @return the System.nanoTime when the most recent bytes arrived from the port.
+     */
+    long lastReadNanos();
 }
@@ -0,0 +1,120 @@
+package com.seismic.serial
+
+import java.io.File
+import java.nio.channels.FileChannel
+import java.nio.channels.FileChannel.MapMode
+import java.nio.charset.StandardCharsets.US_ASCII
+import java.nio.file.StandardOpenOption.{CREATE, READ, TRUNCATE_EXISTING, WRITE}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+
+/**
+  * A recording of everything a serial port sent, exactly as it arrived: after an 8 byte header, one entry per read
+  * of the port, each the System.nanoTime it arrived (8 bytes), its length (4 bytes) and the bytes themselves.
+  * Entries are only ever appended, and an entry with a length of 0 marks the end, so a recording cut off by a crash
+  * still reads back up to its last whole entry.
+  */
+object SerialLog {
+  val Magic = "SEISREC1".getBytes(US_ASCII)
+  val HeaderLength = Magic.length
+  val EntryHeaderLength = 12
+}
+
+/**
+  * Appends to a SerialLog through a memory-mapped window, so recording is a copy into memory and never a write
+  * call on the serial thread. The file grows a window at a time and is trimmed to what was written on close.
+  * Only one thread may append.
+  */
+class SerialLogWriter(val file: File, windowSize: Int = 16 * 1024 * 1024) {
+  import SerialLog._
+
+  private val channel = FileChannel.open(file.toPath, CREATE, READ, WRITE, TRUNCATE_EXISTING)
+  private var windowStart = 0L
+  private var window = map(0)
+  private var closed = false
+
+  window.put(Magic)
+
+  def position = windowStart + window.position()
+
+  def append(bytes: Array[Byte], offset: Int, length: Int, nanos: Long): Unit = synchronized {
+    if (!closed && length > 0) {
+      if (window.remaining() < EntryHeaderLength + length) {
+        windowStart += window.position()
+        window = map(windowStart, EntryHeaderLength + length)
+      }
+      window.putLong(nanos)
+      window.putInt(length)
+      window.put(bytes, offset, length)
+    }
+  }
+
+  def close(): Unit = synchronized {
+    if (!closed) {
+      closed = true
+      val end = position
+      window.force()
+      channel.truncate(end)
+      channel.close()
+    }
+  }
+
+  private def map(start: Long, atLeast: Int = 0): MappedByteBuffer = {
+    channel.map(MapMode.READ_WRITE, start, Math.max(windowSize, atLeast))
+  }
+}
+
+/**
+  * Reads a SerialLog back, mapping the whole file. next() fills in the entry's bytes and arrival time.
+  */
+class SerialLogReader(val file: File) {
+  import SerialLog._
+
+  private val channel = FileChannel.open(file.toPath, READ)
+  private val buffer: ByteBuffer = channel.map(MapMode.READ_ONLY, 0, channel.size())
+
+  var nanos = 0L
+
+  require(isSerialLog, s"$file isn't a serial recording")
+
+  /**
+    * Copies the next entry into dest, up to dest.length bytes.
+    *
+    * @return the entry's length, or -1 at the end of the recording.
+    */
+  def next(dest: Array[Byte]): Int = {
+    if (buffer.remaining() < EntryHeaderLength) {
+      -1
+    } else {
+      val entryNanos = buffer.getLong()
+      val length = buffer.getInt()
+      if (length <= 0 || length > buffer.remaining()) {
+        buffer.position(buffer.limit())
+        -1
+      } else {
+        nanos = entryNanos
+        val toCopy = Math.min(length, dest.length)
+        buffer.get(dest, 0, toCopy)
+        buffer.position(buffer.position() + length - toCopy)
+        toCopy
+      }
+    }
+  }
+
+  def rewind(): Unit = {
+    buffer.position(HeaderLength)
+  }
+
+  def close(): Unit = {
+    channel.close()
+  }
+
+  private def isSerialLog = {
+    if (buffer.remaining() < HeaderLength) {
+      false
+    } else {
+      val magic = new Array[Byte](HeaderLength)
+      buffer.get(magic)
+      java.util.Arrays.equals(magic, Magic)
+    }
+  }
+}
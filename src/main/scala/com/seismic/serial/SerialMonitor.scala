@@ -1,56 +1,245 @@
 package com.seismic.serial
 
+import java.io.File
+import java.nio.charset.StandardCharsets.US_ASCII
 import java.util.concurrent._
 
-import scala.concurrent.{ExecutionContext, Future}
+import com.seismic.log.Log
+import com.seismic.messages.{TriggerEvent, TriggerFrameParser, Triggers}
+import com.seismic.metrics.TriggerLatency
+import com.seismic.queue.{RingBuffer, RingBufferStage, WaitStrategy}
 import com.seismic.utils.RandomHelper._
 
-class SerialMonitor() {
+object SerialMonitor {
+  val RingSize = 1024
+}
+
+/**
+  * Reads lines off the serial port into a preallocated ring and runs each one through three stages, each on its own
+  * thread: parse the bytes into the slot's TriggerEvent, dispatch it (to Seismic), then fan it out to anyone just
+  * watching, like the UI. A slow UI can only back up the fan-out stage, never the dispatch.
+  *
+  * Each frame is stamped as it reaches each stage, and the fan-out stage records those into TriggerLatency so the
+  * bookkeeping stays off the dispatch thread.
+  *
+  * With -Dseismic.serial.binary=true it asks the device for the binary protocol (see BinaryFrameDecoder) and
+  * switches over once the device echoes the mode line back; until then, and with devices that never do, it reads
+  * ASCII lines.
+  */
+class SerialMonitor(parseWaitStrategy: WaitStrategy = WaitStrategy.forStage("parse"),
+                    dispatchWaitStrategy: WaitStrategy = WaitStrategy.forStage("dispatch"),
+                    fanOutWaitStrategy: WaitStrategy = WaitStrategy.forStage("fanout")) {
+
+  @volatile private var dispatchHandlerOpt: Option[(TriggerEvent) => Unit] = None
+  @volatile private var fanOutHandlers = Array[(TriggerEvent) => Unit]()
+
+  private val ring = new RingBuffer[SerialFrame](SerialMonitor.RingSize, () => new SerialFrame, WaitStrategy.Yielding)
+  private val readBuffer = new Array[Byte](SerialFrame.MaxLength)
+  private val binaryDecoder = new BinaryFrameDecoder
+  private val modeLine = BinaryFrameDecoder.ModeLine.getBytes(US_ASCII)
+  @volatile private var binaryMode = false
+
+  private val parseStage = new RingBufferStage[SerialFrame]("parse",
+                                                            ring,
+                                                            None,
+                                                            parseWaitStrategy,
+                                                            (frame: SerialFrame) => parse(frame))
+  private val dispatchStage = new RingBufferStage[SerialFrame]("dispatch",
+                                                               ring,
+                                                               Some(parseStage),
+                                                               dispatchWaitStrategy,
+                                                               (frame: SerialFrame) => dispatch(frame))
+  private val fanOutStage = new RingBufferStage[SerialFrame]("fanout",
+                                                             ring,
+                                                             Some(dispatchStage),
+                                                             fanOutWaitStrategy,
+                                                             (frame: SerialFrame) => fanOut(frame))
 
-  implicit val executionContext = ExecutionContext.fromExecutor(Executors.newFixedThreadPool(1))
-  var handlerOpt: Option[(String => Unit)] = None
+  parseStage.start()
+  dispatchStage.start()
+  fanOutStage.start()
 
-  def setHandler(handler: (String) => Unit): Unit = {
-    handlerOpt = Option(handler)
+  def setDispatchHandler(handler: (TriggerEvent) => Unit): Unit = {
+    dispatchHandlerOpt = Option(handler)
+  }
+
+  def addFanOutHandler(handler: (TriggerEvent) => Unit): Unit = synchronized {
+    fanOutHandlers = fanOutHandlers :+ handler
   }
 
   def fireSerialMessage(message: String): Unit = {
-    handleMessage(message)
+    val bytes = message.getBytes(US_ASCII)
+    val now = System.nanoTime()
+    publish(bytes, bytes.length, binary = false, now, now)
   }
 
+  /**
+    * How many frames are waiting on the slowest stage.
+    */
+  def queueDepth = ring.depth
+
   def start(port: String): Unit = {
     val serialIO = serialIOFor(port)
 
     serialIO.open(new SerialListener {
       override def dataAvailable(): Unit = {
-        val message = serialIO.readStringUntil(10)
-        if (message != null) {
-          handleMessage(message)
+        val readNanos = serialIO.lastReadNanos()
+        if (!binaryMode) {
+          readLines(serialIO, readNanos)
+        }
+        if (binaryMode) {
+          readBinaryFrames(serialIO, readNanos)
         }
       }
     })
+
+    if (java.lang.Boolean.getBoolean("seismic.serial.binary")) {
+      serialIO.write(BinaryFrameDecoder.ModeLine + "\n")
+    }
+  }
+
+  def isBinaryMode = binaryMode
+
+  /**
+    * Each line is measured first, then copied once, from the port's ring straight into the frame it's published in.
+    */
+  private def readLines(serialIO: SerialIO, readNanos: Long): Unit = {
+    var length = serialIO.nextLineLength(10)
+    while (length != 0) {
+      if (length > SerialFrame.MaxLength) {
+        // too long to be anything we understand; take it off the port and drop it.
+        serialIO.readStringUntil(10)
+      } else {
+        val sequence = ring.next()
+        val frame = ring.get(sequence)
+        val read = Math.max(serialIO.readBytesUntil(10, frame.bytes), 0)
+        if (isModeLine(frame.bytes, read)) {
+          Log.info(Log.Serial, "Device switched to the binary protocol")
+          binaryMode = true
+          // the slot's claimed, so it goes through the stages with nothing in it
+          frame.filled(0, binary = false, readNanos, System.nanoTime())
+          ring.publish(sequence)
+          return
+        }
+        frame.filled(read, binary = false, readNanos, System.nanoTime())
+        ring.publish(sequence)
+      }
+      length = serialIO.nextLineLength(10)
+    }
   }
 
-  private def handleMessage(message: String): Unit = {
-    handlerOpt.foreach { handler =>
-      Future {
-        // handle on some other thread; though at this point that's the midi thread too.
-        try {
-          handler(message)
-        } catch {
-          case e: Exception => e.printStackTrace()
+  private def readBinaryFrames(serialIO: SerialIO, readNanos: Long): Unit = {
+    var read = serialIO.readBytes(readBuffer)
+    while (read > 0) {
+      var offered = 0
+      while (offered < read) {
+        offered += binaryDecoder.offer(readBuffer, offered, read - offered)
+        while (binaryDecoder.hasFrame) {
+          val sequence = ring.next()
+          val frame = ring.get(sequence)
+          binaryDecoder.nextFrame(frame.bytes)
+          frame.filled(BinaryFrameDecoder.FrameLength, binary = true, readNanos, System.nanoTime())
+          ring.publish(sequence)
         }
       }
+      read = serialIO.readBytes(readBuffer)
+    }
+  }
+
+  private def isModeLine(bytes: Array[Byte], length: Int) = {
+    var end = length
+    while (end > 0 && (bytes(end - 1) == '\n' || bytes(end - 1) == '\r')) end -= 1
+    var i = 0
+    while (i < end && end == modeLine.length && bytes(i) == modeLine(i)) i += 1
+    end == modeLine.length && i == end
+  }
+
+  private def publish(bytes: Array[Byte], length: Int, binary: Boolean, readNanos: Long, framedNanos: Long): Unit = {
+    val sequence = ring.next()
+    ring.get(sequence).set(bytes, length, binary, readNanos, framedNanos)
+    ring.publish(sequence)
+  }
+
+  private def parse(frame: SerialFrame): Unit = {
+    if (frame.length == 0) {
+      frame.event.reset()
+      return
+    }
+    val parsed = if (frame.binary) {
+      BinaryFrameDecoder.decode(frame.bytes, 0, frame.event)
+    } else {
+      TriggerFrameParser.parse(frame.bytes, 0, frame.length, frame.event)
+    }
+    if (parsed) {
+      frame.parsedNanos = System.nanoTime()
+      frame.event.originNanos = frame.readNanos
+    } else {
+      Log.warn(Log.Serial, "Ignoring unknown message %s", frame.asString)
+    }
+  }
+
+  private def dispatch(frame: SerialFrame): Unit = {
+    val handlerOpt = dispatchHandlerOpt
+    if (handlerOpt.isDefined && frame.event.isValid) {
+      frame.dispatchedNanos = System.nanoTime()
+      handlerOpt.get(frame.event)
+      frame.midiQueuedNanos = frame.event.midiQueuedNanos
+    }
+  }
+
+  private def fanOut(frame: SerialFrame): Unit = {
+    if (frame.event.isValid) {
+      recordLatency(frame)
+
+      val handlers = fanOutHandlers
+      var i = 0
+      while (i < handlers.length) {
+        handlers(i)(frame.event)
+        i += 1
+      }
+    }
+  }
+
+  private def recordLatency(frame: SerialFrame): Unit = {
+    val event = frame.event
+    val triggerId = if (event.kind == TriggerEvent.TriggerOn || event.kind == TriggerEvent.TriggerOff) {
+      event.triggerId
+    } else {
+      Triggers.Unknown
+    }
+
+    TriggerLatency.record(triggerId, TriggerLatency.Framed, frame.framedNanos - frame.readNanos)
+    TriggerLatency.record(triggerId, TriggerLatency.Parsed, frame.parsedNanos - frame.readNanos)
+    if (frame.dispatchedNanos > 0) {
+      TriggerLatency.record(triggerId, TriggerLatency.Dispatched, frame.dispatchedNanos - frame.readNanos)
+    }
+    if (frame.midiQueuedNanos > 0) {
+      TriggerLatency.record(triggerId, TriggerLatency.MidiQueued, frame.midiQueuedNanos - frame.readNanos)
     }
   }
 
   private def serialIOFor(port: String) = {
     if (port.equals("mock")) {
       new MockSerialIO
+    } else if (port.startsWith(LoadProfile.Prefix)) {
+      new LoadGeneratorSerialIO(LoadProfile.forPort(port))
+    } else if (port.startsWith(ReplaySerialIO.Prefix)) {
+      ReplaySerialIO.forPort(port)
     } else {
-      new StandardSerialIO(port)
+      val serialIO = new StandardSerialIO(port)
+      Option(System.getProperty("seismic.record")).foreach { path => serialIO.record(recorder(new File(path))) }
+      serialIO
     }
   }
+
+  private def recorder(file: File) = {
+    val recorder = new SerialLogWriter(file)
+    Runtime.getRuntime.addShutdownHook(new Thread() {
+      override def run(): Unit = recorder.close()
+    })
+    Log.info(Log.Serial, "Recording serial input to %s", file.getAbsolutePath)
+    recorder
+  }
 }
 
 class MockSerialIO extends SerialIO {
@@ -96,6 +285,25 @@ class MockSerialIO extends SerialIO {
     io.readStringUntil(byte)
   }
 
+  def nextLineLength(byte: Int) = {
+    io.nextLineLength(byte)
+  }
+
+  def readBytesUntil(byte: Int, dest: Array[Byte]) = {
+    io.readBytesUntil(byte, dest)
+  }
+
+  /**
+    * The mock only speaks ASCII, so it never answers MODE,BINARY and never has raw bytes to give.
+    */
+  def readBytes(dest: Array[Byte]) = 0
+
+  def write(src: String): Unit = {}
+
+  def lastReadNanos() = {
+    System.nanoTime()
+  }
+
   def trigger(message: String): Unit = {
     io.trigger(message)
   }
@@ -114,8 +322,8 @@ class MockSerialIO extends SerialIO {
     val kickOff = () => kick.triggerOff()
     val snareOff = () => snare.triggerOff()
 
+    // everything that tells the listener about data runs on this one thread, like a real serial port's event thread.
     val drumTriggerScheduledExecutor = Executors.newSingleThreadScheduledExecutor
-    val notifierPool = Executors.newFixedThreadPool(1)
 
     var queue = new ArrayBlockingQueue[String](100)
 
@@ -140,9 +348,34 @@ class MockSerialIO extends SerialIO {
       queue.poll()
     }
 
+    def nextLineLength(byte: Int) = {
+      val message = queue.peek()
+      if (message == null) 0 else message.getBytes(US_ASCII).length
+    }
+
+    /**
+      * A message too long for dest is left where it is and -1 returned, as a real port does, rather than cut short;
+      * readStringUntil takes it off.
+      */
+    def readBytesUntil(byte: Int, dest: Array[Byte]) = {
+      val message = queue.peek()
+      if (message == null) {
+        0
+      } else {
+        val bytes = message.getBytes(US_ASCII)
+        if (bytes.length > dest.length) {
+          -1
+        } else {
+          queue.poll()
+          System.arraycopy(bytes, 0, dest, 0, bytes.length)
+          bytes.length
+        }
+      }
+    }
+
     def trigger(message: String): Unit = {
       queue.put(message)
-      notifierPool.execute(new Runnable {
+      drumTriggerScheduledExecutor.execute(new Runnable {
         override def run(): Unit = {
           serialListener.dataAvailable()
         }
@@ -24,6 +24,7 @@ package com.seismic.serial;
 */
 
 
+import com.seismic.log.Log;
 import jssc.*;
 
 
@@ -51,13 +52,22 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
 
     SerialPort port;
 
-    byte[] buffer = new byte[32768];
-    int inBuffer = 0;
-    int readOffset = 0;
+    /**
+     * Bytes from the port waiting to be read. Fixed size: if the reader falls this far behind, what arrives next is
+     * dropped and counted rather than buffered.
+     */
+    static final int RING_CAPACITY = 32768;
+    final ByteRing ring = new ByteRing(RING_CAPACITY);
+    long reportedOverflowBytes = 0;
+    long reportedResyncs = 0;
 
     int bufferUntilSize = 1;
     byte bufferUntilByte = 0;
 
+    volatile long lastReadNanos = 0;
+
+    SerialLogWriter recorder;
+
     // Things we are currently not exposing:
     // * hardware flow control
     // * state of the RING, RLSD line
@@ -167,7 +177,7 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public int available() {
-        return (inBuffer-readOffset);
+        return ring.available();
     }
 
 
@@ -200,10 +210,7 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public void clear() {
-        synchronized (buffer) {
-            inBuffer = 0;
-            readOffset = 0;
-        }
+        ring.clear();
     }
 
 
@@ -234,16 +241,9 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public int last() {
-        if (inBuffer == readOffset) {
-            return -1;
-        }
-
-        synchronized (buffer) {
-            int ret = buffer[inBuffer-1] & 0xFF;
-            inBuffer = 0;
-            readOffset = 0;
-            return ret;
-        }
+        int ret = ring.last();
+        ring.clear();
+        return ret;
     }
 
 
@@ -275,18 +275,12 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public int read() {
-        if (inBuffer == readOffset) {
+        if (ring.available() == 0) {
             return -1;
         }
-
-        synchronized (buffer) {
-            int ret = buffer[readOffset++] & 0xFF;
-            if (inBuffer == readOffset) {
-                inBuffer = 0;
-                readOffset = 0;
-            }
-            return ret;
-        }
+        int ret = ring.get(0) & 0xFF;
+        ring.skip(1);
+        return ret;
     }
 
 
@@ -296,17 +290,13 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public byte[] readBytes() {
-        if (inBuffer == readOffset) {
+        int length = ring.available();
+        if (length == 0) {
             return null;
         }
-
-        synchronized (buffer) {
-            byte[] ret = new byte[inBuffer-readOffset];
-            System.arraycopy(buffer, readOffset, ret, 0, ret.length);
-            inBuffer = 0;
-            readOffset = 0;
-            return ret;
-        }
+        byte[] ret = new byte[length];
+        ring.read(ret, 0, length);
+        return ret;
     }
 
 
@@ -321,23 +311,13 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @param max the maximum number of bytes to read
      */
     public byte[] readBytes(int max) {
-        if (inBuffer == readOffset) {
+        int length = Math.min(ring.available(), max);
+        if (length == 0) {
             return null;
         }
-
-        synchronized (buffer) {
-            int length = inBuffer - readOffset;
-            if (length > max) length = max;
-            byte[] ret = new byte[length];
-            System.arraycopy(buffer, readOffset, ret, 0, length);
-
-            readOffset += length;
-            if (inBuffer == readOffset) {
-                inBuffer = 0;
-                readOffset = 0;
-            }
-            return ret;
-        }
+        byte[] ret = new byte[length];
+        ring.read(ret, 0, length);
+        return ret;
     }
 
     /**
@@ -350,24 +330,11 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * are dataAvailable than can fit into the byte array, only those
      * that will fit are read.
      */
+    @Override
     public int readBytes(byte[] dest) {
-        if (inBuffer == readOffset) {
-            return 0;
-        }
-
-        synchronized (buffer) {
-            int toCopy = inBuffer-readOffset;
-            if (dest.length < toCopy) {
-                toCopy = dest.length;
-            }
-            System.arraycopy(buffer, readOffset, dest, 0, toCopy);
-            readOffset += toCopy;
-            if (inBuffer == readOffset) {
-                inBuffer = 0;
-                readOffset = 0;
-            }
-            return toCopy;
-        }
+        int toCopy = Math.min(ring.available(), dest.length);
+        ring.read(dest, 0, toCopy);
+        return toCopy;
     }
 
 
@@ -378,33 +345,19 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @param inByte character designated to mark the end of the data
      */
     public byte[] readBytesUntil(int inByte) {
-        if (inBuffer == readOffset) {
+        int toCopy = ring.nextFrameLength(inByte);
+        if (toCopy == 0) {
             return null;
         }
+        byte[] dest = new byte[toCopy];
+        ring.read(dest, 0, toCopy);
+        return dest;
+    }
 
-        synchronized (buffer) {
-            // look for needle in buffer
-            int found = -1;
-            for (int i=readOffset; i < inBuffer; i++) {
-                if (buffer[i] == (byte)inByte) {
-                    found = i;
-                    break;
-                }
-            }
-            if (found == -1) {
-                return null;
-            }
 
-            int toCopy = found-readOffset+1;
-            byte[] dest = new byte[toCopy];
-            System.arraycopy(buffer, readOffset, dest, 0, toCopy);
-            readOffset += toCopy;
-            if (inBuffer == readOffset) {
-                inBuffer = 0;
-                readOffset = 0;
-            }
-            return dest;
-        }
+    @Override
+    public int nextLineLength(int inByte) {
+        return ring.nextFrameLength(inByte);
     }
 
 
@@ -414,42 +367,25 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      *   and an error message is printed on the console.
      * If nothing is in the buffer, zero is returned.
      * If 'interesting' byte is not in the buffer, then 0 is returned.
+     * The line is found in place in the ring and copied once, straight into dest.
      * @param dest passed in byte array to be altered
      */
+    @Override
     public int readBytesUntil(int inByte, byte[] dest) {
-        if (inBuffer == readOffset) {
+        int toCopy = ring.nextFrameLength(inByte);
+        if (toCopy == 0) {
             return 0;
         }
 
-        synchronized (buffer) {
-            // look for needle in buffer
-            int found = -1;
-            for (int i=readOffset; i < inBuffer; i++) {
-                if (buffer[i] == (byte)inByte) {
-                    found = i;
-                    break;
-                }
-            }
-            if (found == -1) {
-                return 0;
-            }
-
-            // check if bytes to copy fit in dest
-            int toCopy = found-readOffset+1;
-            if (dest.length < toCopy) {
-                System.err.println( "The buffer passed to readBytesUntil() is to small " +
-                        "to contain " + toCopy + " bytes up to and including " +
-                        "char " + (byte)inByte);
-                return -1;
-            }
-            System.arraycopy(buffer, readOffset, dest, 0, toCopy);
-            readOffset += toCopy;
-            if (inBuffer == readOffset) {
-                inBuffer = 0;
-                readOffset = 0;
-            }
-            return toCopy;
+        // check if bytes to copy fit in dest
+        if (dest.length < toCopy) {
+            System.err.println( "The buffer passed to readBytesUntil() is to small " +
+                    "to contain " + toCopy + " bytes up to and including " +
+                    "char " + (byte)inByte);
+            return -1;
         }
+        ring.read(dest, 0, toCopy);
+        return toCopy;
     }
 
 
@@ -469,7 +405,7 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      */
     public String readString() {
-        if (inBuffer == readOffset) {
+        if (ring.available() == 0) {
             return null;
         }
         return new String(readBytes());
@@ -498,6 +434,12 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
     }
 
 
+    @Override
+    public long lastReadNanos() {
+        return lastReadNanos;
+    }
+
+
     /**
      * @generate serialEvent.xml
      * @webref serial:events
@@ -506,25 +448,20 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      */
     public void serialEvent(SerialPortEvent event) {
         if (event.getEventType() == SerialPortEvent.RXCHAR) {
+            lastReadNanos = System.nanoTime();
             int toRead;
             try {
                 while (0 < (toRead = port.getInputBufferBytesCount())) {
-                    // this method can be called from the context of another thread
-                    synchronized (buffer) {
-                        // enlarge buffer if necessary
-                        if (buffer.length < inBuffer+toRead) {
-                            byte temp[] = new byte[buffer.length<<1];
-                            System.arraycopy(buffer, 0, temp, 0, inBuffer);
-                            buffer = temp;
-                        }
-                        // read an array of bytes and copy it into our buffer
-                        byte[] read = port.readBytes(toRead);
-                        System.arraycopy(read, 0, buffer, inBuffer, read.length);
-                        inBuffer += read.length;
+                    // jssc only hands out fresh arrays; copy it into the ring and let it go
+                    byte[] read = port.readBytes(toRead);
+                    if (recorder != null) {
+                        recorder.append(read, 0, read.length, lastReadNanos);
                     }
+                    ring.write(read, 0, read.length);
                 }
+                reportOverflow();
 
-                if (inBuffer > 0) {
+                if (ring.hasUnread()) {
                     serialListener.dataAvailable();
                 }
             } catch (SerialPortException e) {
@@ -534,6 +471,36 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
     }
 
 
+    /**
+     * Appends everything read from the port, as it arrives, to recorder. Set before open().
+     */
+    public void record(SerialLogWriter recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Bytes dropped because the reader fell a whole ring behind.
+     */
+    public long overflowedBytes() {
+        return ring.overflowedBytes();
+    }
+
+    private void reportOverflow() {
+        long overflowed = ring.overflowedBytes();
+        if (overflowed != reportedOverflowBytes) {
+            Log.warn(Log.Serial(), "Serial reader fell behind, dropped %d bytes (%d total)",
+                    overflowed - reportedOverflowBytes, overflowed);
+            reportedOverflowBytes = overflowed;
+        }
+        long resyncs = ring.resyncs();
+        if (resyncs != reportedResyncs) {
+            Log.warn(Log.Serial(), "Serial input had no line breaks for a whole buffer, discarded it and resynced (%d total)",
+                    resyncs);
+            reportedResyncs = resyncs;
+        }
+    }
+
+
     /**
      * Set the DTR line
      */
@@ -571,8 +538,7 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
         } catch (SerialPortException e) {
             // ignored
         }
-        inBuffer = 0;
-        readOffset = 0;
+        ring.clear();
     }
 
 
@@ -622,6 +588,7 @@ public class StandardSerialIO implements SerialPortEventListener, SerialIO {
      * @usage web_application
      * @param src data to write
      */
+    @Override
     public void write(String src) {
         try {
             port.writeString(src);
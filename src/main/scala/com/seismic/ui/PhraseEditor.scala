@@ -35,7 +35,7 @@ class PhraseEditor(onSongUpdated: () => Unit,
   }
 
   val onPatchChange = (patch: String) => curentPhraseOpt.foreach { phrase =>
-    phrase.patch = Integer.valueOf(patch)
+    phrase.setPatch(Integer.valueOf(patch))
     onPhraseUpdated(phrase)
   }
 
@@ -8,6 +8,9 @@ import javax.swing._
 import com.daveclay.swing.util.Position.position
 import com.seismic._
 import com.seismic.io.Preferences
+import com.seismic.log.Log
+import com.seismic.metrics.TriggerLatency
+import com.seismic.midi.MidiOutputLane
 import com.seismic.ui.utils.SwingComponents.{backgroundColor, componentBGColor}
 import com.seismic.ui.utils.layout.GridBagLayoutHelper
 import com.seismic.ui.utils.{JSONFileChooser, SMenu, _}
@@ -110,6 +113,8 @@ class SeismicUI(seismic: Seismic,
   val newSetList = () => setlistUI.newSetList()
   val saveSetList = () => setlistUI.save()
   val openSetList = () => fileChooser.show()
+  val printLatencyReport = () => println(s"${TriggerLatency.report}\n${MidiOutputLane.report}")
+  val toggleNoteLogging = () => Log.setLevel(Log.Midi, if (Log.level(Log.Midi) == Log.Debug) Log.Info else Log.Debug)
 
   val menuBar = new JMenuBar
   val fileMenu = new SMenu("File")
@@ -120,6 +125,8 @@ class SeismicUI(seismic: Seismic,
   fileMenu.addItem("New Set List", acceleratorMnemonicKey = KeyEvent.VK_N, newSetList)
   fileMenu.addItem("Open", acceleratorMnemonicKey = KeyEvent.VK_O, openSetList)
   fileMenu.addItem("Save", acceleratorMnemonicKey = KeyEvent.VK_S, saveSetList)
+  fileMenu.addItem("Print Latency Report", acceleratorMnemonicKey = KeyEvent.VK_L, printLatencyReport)
+  fileMenu.addItem("Toggle Note Logging", acceleratorMnemonicKey = KeyEvent.VK_G, toggleNoteLogging)
 
   frame.setJMenuBar( menuBar )
   val contentPane = frame.getContentPane
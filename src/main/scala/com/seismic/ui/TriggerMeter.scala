@@ -2,11 +2,10 @@ package com.seismic.ui
 
 import java.awt._
 import java.awt.event.{MouseAdapter, MouseEvent}
-import java.util.concurrent.{Executors, ScheduledFuture, TimeUnit}
+import java.util.concurrent.atomic.AtomicLong
 import javax.swing.JPanel
 
 import com.daveclay.swing.util.Position._
-import com.seismic.ui.utils.SwingThreadHelper.invokeLater
 import com.seismic.ui.utils.layout.GridBagLayoutHelper
 import com.seismic.ui.utils.{Indicator, LabeledTextField, SwingComponents}
 
@@ -18,25 +17,26 @@ class TriggerMeter(title: String,
   setMinimumSize(size)
   setBackground(Color.BLACK)
 
-  var decayCounter = 30
-  val decayTick = 10
-  val scheduledThreadExecutor = Executors.newScheduledThreadPool(1)
-  var currentValue = 0
-  var currentDecayFuture: Option[ScheduledFuture[_]] = None
-
-  val decayRunnable = new Runnable() {
-    def run(): Unit = {
-      if (currentValue > 0) {
-        currentValue = Math.max(0, currentValue - decayCounter)
-        invokeLater { () =>
-          setValueWithoutDecay(currentValue)
-        }
-        scheduleNextDecay()
-      } else {
-        cancelDecay()
-      }
-    }
-  }
+  /**
+    * A released meter falls from its last hit to nothing in a quarter of a second.
+    */
+  private val DecayNanos = 250000000L
+
+  // written from any thread by setValue and off, read once a frame. Each hit and release takes the next number
+  // from events, so a frame can tell which came last.
+  private val events = new AtomicLong
+  @volatile private var lastHit = 0L
+  @volatile private var lastRelease = 0L
+  @volatile private var hitValue = 0
+
+  // frame only
+  private var seenHit = 0L
+  private var seenRelease = 0L
+  private var peakValue = 0
+  private var decayFromValue = 0
+  private var decayStartNanos = 0L
+  private var decaying = false
+  private var currentValue = 0
 
   private val label = SwingComponents.label(title)
   label.setForeground(Color.WHITE)
@@ -67,41 +67,70 @@ class TriggerMeter(title: String,
     override def mouseReleased(e: MouseEvent): Unit = off()
   })
 
-  def off() = {
-    startDecay()
-    label.setText(f"$title%5s  0FF")
-    label.setForeground(Color.WHITE)
-    setBackground(Color.BLACK)
+  /**
+    * Marks the trigger released; the meter starts to fall on the next frame. Safe to call from any thread.
+    */
+  def off(): Unit = {
+    lastRelease = events.incrementAndGet()
   }
 
+  /**
+    * Marks the trigger hit at value; the meter shows it on the next frame. Safe to call from any thread.
+    */
   def setValue(value: Int): Unit = {
-    cancelDecay()
-    label.setText(f"$title%5s $value%4s")
-    label.setForeground(Color.BLACK)
-    setBackground(SwingComponents.highlightColor)
-    setValueWithoutDecay(value)
-    decayCounter = (value * .04f).toInt
+    hitValue = value
+    lastHit = events.incrementAndGet()
   }
 
-  private def setValueWithoutDecay(value: Int): Unit = {
-    currentValue = value
-    linearIndicator.setValue(value)
+  /**
+    * Shows whatever happened since the last frame: the latest hit, then the release if it came after, then however
+    * far the meter's fallen since it was released. Called on the event dispatch thread by the frame clock.
+    */
+  def frame(nowNanos: Long): Unit = {
+    val hit = lastHit
+    val release = lastRelease
+    if (hit != seenHit) {
+      seenHit = hit
+      showHit(hitValue)
+    }
+    if (release != seenRelease) {
+      seenRelease = release
+      if (release > hit) {
+        showReleased(nowNanos)
+      }
+    }
+
+    if (decaying) {
+      val elapsed = nowNanos - decayStartNanos
+      val fallen = (peakValue * elapsed / DecayNanos).toInt
+      val value = Math.max(0, decayFromValue - fallen)
+      decaying = value > 0
+      showValue(value)
+    }
   }
 
-  private def startDecay(): Unit = {
-    cancelDecay()
-    scheduleNextDecay()
+  private def showHit(value: Int): Unit = {
+    decaying = false
+    peakValue = value
+    label.setText(f"$title%5s $value%4s")
+    label.setForeground(Color.BLACK)
+    setBackground(SwingComponents.highlightColor)
+    showValue(value)
   }
 
-  private def scheduleNextDecay(): Unit = {
-    currentDecayFuture = Some(scheduledThreadExecutor.schedule(decayRunnable, decayTick, TimeUnit.MILLISECONDS))
+  private def showReleased(nowNanos: Long): Unit = {
+    decaying = true
+    decayFromValue = currentValue
+    decayStartNanos = nowNanos
+    label.setText(f"$title%5s  0FF")
+    label.setForeground(Color.WHITE)
+    setBackground(Color.BLACK)
   }
 
-  private def cancelDecay(): Unit = {
-    currentDecayFuture match {
-      case Some(future) => future.cancel(true)
-      case None =>
+  private def showValue(value: Int): Unit = {
+    if (value != currentValue) {
+      currentValue = value
+      linearIndicator.setValue(value)
     }
   }
 }
-
@@ -5,9 +5,8 @@ import javax.swing.JPanel
 
 import com.daveclay.swing.util.Position._
 import com.seismic.io.Preferences
-import com.seismic.messages.{Message, TriggerOffMessage, TriggerOnMessage}
-import com.seismic.ui.utils.SwingComponents
-import com.seismic.ui.utils.SwingThreadHelper.invokeLater
+import com.seismic.messages.{TriggerEvent, Triggers}
+import com.seismic.ui.utils.{FrameClock, SwingComponents}
 import com.seismic.ui.utils.layout.GridBagLayoutHelper
 
 class TriggerMonitorUI(onKickThresholdSet: (Int) => Unit,
@@ -33,7 +32,8 @@ class TriggerMonitorUI(onKickThresholdSet: (Int) => Unit,
 
   private val handleMeter = new HandleMeter(new Dimension(194, size.height - 8))
 
-  private val triggerMonitors = Map("KICK" -> kickMonitor, "SNARE" -> snareMonitor)
+  private val kickMonitorOpt = Option(kickMonitor)
+  private val snareMonitorOpt = Option(snareMonitor)
 
   val helper = new GridBagLayoutHelper(this)
 
@@ -48,32 +48,42 @@ class TriggerMonitorUI(onKickThresholdSet: (Int) => Unit,
     }
   }
 
-  def handleMessage(message: Message): Unit = {
-    // TODO: shouldn't this just listen to Seismic, not for raw messages?
-    invokeLater { () =>
-      message match {
-        case triggerOn: TriggerOnMessage => handleTriggerOn(triggerOn)
-        case triggerOff: TriggerOffMessage => handleTriggerOff(triggerOff)
-        case _ =>
-      }
+  // the last handle position from the serial thread, read once a frame
+  @volatile private var handleValue = 0
+  @volatile private var handleMoves = 0L
+  private var seenHandleMoves = 0L
+
+  FrameClock.onFrame { (nowNanos) =>
+    kickMonitor.frame(nowNanos)
+    snareMonitor.frame(nowNanos)
+    if (handleMoves != seenHandleMoves) {
+      seenHandleMoves = handleMoves
+      handleMeter.setRawValue(handleValue)
     }
   }
 
-  private def handleTriggerOn(triggerOn: TriggerOnMessage): Unit = {
-    triggerMonitors.get(triggerOn.name) match {
-      case Some(monitor) =>
-        val value = triggerOn.triggerValue
-        monitor.setValue(value)
-      case None =>
+  /**
+    * Called for every serial event, on the serial thread. Only notes what happened; the meters catch up on the next
+    * frame, so nothing is queued on the event dispatch thread per hit.
+    */
+  def handleEvent(event: TriggerEvent): Unit = {
+    // TODO: shouldn't this just listen to Seismic, not for raw messages?
+    event.kind match {
+      case TriggerEvent.TriggerOn =>
+        monitorFor(event.triggerId).foreach { monitor => monitor.setValue(event.triggerValue) }
+        handleValue = event.handleValue
+        handleMoves += 1
+      case TriggerEvent.TriggerOff =>
+        monitorFor(event.triggerId).foreach { monitor => monitor.off() }
+      case _ =>
     }
-    handleMeter.setRawValue(triggerOn.handleValue)
   }
 
-  private def handleTriggerOff(triggerOff: TriggerOffMessage): Unit = {
-    triggerMonitors.get(triggerOff.name) match {
-      case Some(monitor) =>
-        monitor.off()
-      case None =>
+  private def monitorFor(triggerId: Int) = {
+    triggerId match {
+      case Triggers.KICK => kickMonitorOpt
+      case Triggers.SNARE => snareMonitorOpt
+      case _ => None
     }
   }
 }
@@ -0,0 +1,17 @@
+package com.seismic.ui.utils
+
+import java.awt.Color
+
+import com.daveclay.swing.color.GradientValueMap
+
+/**
+  * A gradient worked out once for every value from 0 to size - 1, so a meter can look up its color on every update
+  * without GradientValueMap making a new Color each time. Values outside the table get the color at its ends.
+  */
+class ColorTable(gradient: GradientValueMap, size: Int = 1024) {
+  val colors: Array[Color] = Array.tabulate(size) { value => gradient.getColorForValue(value) }
+
+  def colorFor(value: Int): Color = colors(indexFor(value))
+
+  private def indexFor(value: Int) = Math.max(0, Math.min(value, size - 1))
+}
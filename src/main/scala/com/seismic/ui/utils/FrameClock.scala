@@ -0,0 +1,37 @@
+package com.seismic.ui.utils
+
+import java.awt.event.{ActionEvent, ActionListener}
+import java.util.concurrent.CopyOnWriteArrayList
+import javax.swing.Timer
+
+/**
+  * One Swing timer, ticking about 60 times a second, that every animated component draws from. Components keep
+  * whatever the serial thread last told them in fields of their own and bring the screen up to date when the clock
+  * ticks, so the event dispatch thread does the same work a frame however fast hits are coming in.
+  */
+object FrameClock {
+  val FrameMillis = 16
+
+  private val listeners = new CopyOnWriteArrayList[(Long) => Unit]()
+
+  private val timer = new Timer(FrameMillis, new ActionListener {
+    override def actionPerformed(e: ActionEvent): Unit = {
+      val nowNanos = System.nanoTime()
+      val iterator = listeners.iterator()
+      while (iterator.hasNext) {
+        iterator.next()(nowNanos)
+      }
+    }
+  })
+  timer.setCoalesce(true)
+
+  /**
+    * Calls onFrame on the event dispatch thread every frame, with System.nanoTime as of the frame.
+    */
+  def onFrame(onFrame: (Long) => Unit): Unit = {
+    listeners.add(onFrame)
+    if (!timer.isRunning) {
+      timer.start()
+    }
+  }
+}
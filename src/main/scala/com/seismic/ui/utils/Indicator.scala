@@ -1,65 +1,99 @@
 package com.seismic.ui.utils
 
-import java.awt.{Color, Dimension}
+import java.awt.image.BufferedImage
+import java.awt.{Color, Dimension, Graphics, Graphics2D}
 import javax.swing.JPanel
 
 import com.daveclay.swing.color.GradientValueMap
-import com.daveclay.swing.util.Position._
-import com.seismic.ui.utils.layout.GridBagLayoutHelper
-import com.seismic.utils.ValueMapHelper._
 
+/**
+  * A horizontal bar meter. The bar is drawn straight into an image the size of the meter whenever the value
+  * changes, and painting just copies that image, so an update costs no allocation and no layout. The image and the
+  * Graphics2D that draws into it are made again only when the meter is resized.
+  */
 class Indicator(size: Dimension,
                 minValue: Int = 0,
                 maxValue: Int = 1023) extends JPanel {
-  val meterColorMap = new GradientValueMap()
-  meterColorMap.addRedPoint(0, 100)
-  meterColorMap.addGreenPoint(0, 100)
-  meterColorMap.addBluePoint(0, 100)
-
-  meterColorMap.addRedPoint(400, 250)
-  meterColorMap.addGreenPoint(400, 60)
-  meterColorMap.addBluePoint(400, 0)
 
-  meterColorMap.addRedPoint(600, 250)
-  meterColorMap.addGreenPoint(600, 180)
-  meterColorMap.addBluePoint(600, 30)
+  setPreferredSize(size)
+  setMinimumSize(size)
 
-  meterColorMap.addRedPoint(800, 200)
-  meterColorMap.addGreenPoint(800, 250)
-  meterColorMap.addBluePoint(800, 0)
+  private var value = minValue
+  private var buffer: BufferedImage = _
+  private var bufferGraphics: Graphics2D = _
 
-  meterColorMap.addRedPoint(1000, 0)
-  meterColorMap.addGreenPoint(1000, 255)
-  meterColorMap.addBluePoint(1000, 0)
+  def setValue(value: Int): Unit = {
+    this.value = value
+    if (buffer != null) {
+      render()
+    }
+    repaint()
+  }
 
-  setPreferredSize(size)
-  setMinimumSize(size)
+  override def setBackground(color: Color): Unit = {
+    super.setBackground(color)
+    if (buffer != null) {
+      render()
+    }
+  }
 
-  private val lightDimension = new Dimension(1, size.height)
-  
-  val light = new JPanel()
-  light.setBackground(Color.BLACK)
-  light.setPreferredSize(lightDimension)
-  light.setMinimumSize(lightDimension)
+  override def paintComponent(graphics: Graphics): Unit = {
+    if (buffer == null || buffer.getWidth != getWidth || buffer.getHeight != getHeight) {
+      if (getWidth <= 0 || getHeight <= 0) return
+      if (bufferGraphics != null) {
+        bufferGraphics.dispose()
+      }
+      buffer = new BufferedImage(getWidth, getHeight, BufferedImage.TYPE_INT_RGB)
+      bufferGraphics = buffer.createGraphics()
+      render()
+    }
+    graphics.drawImage(buffer, 0, 0, null)
+  }
 
-  position(light).at(0, 0).in(this)
+  private def render(): Unit = {
+    val width = buffer.getWidth
+    val height = buffer.getHeight
+    val clamped = Math.max(minValue, Math.min(value, maxValue))
+    val barWidth = ((clamped - minValue).toLong * width / (maxValue - minValue)).toInt
 
-  def setValue(value: Int): Unit = {
-    val size: Dimension = getSize
-    val width = map(value, minValue, maxValue, 0, size.getWidth.toFloat).toInt
-    light.setSize(new Dimension(width, Math.ceil(size.getHeight).toInt))
-    light.setBackground(meterColorMap.getColorForValue(value))
+    bufferGraphics.setColor(getBackground)
+    bufferGraphics.fillRect(0, 0, width, height)
+    bufferGraphics.setColor(MeterColors.meterTable.colorFor(value))
+    bufferGraphics.fillRect(0, 0, barWidth, height)
   }
 
-  /*
-  addComponentListener(new ComponentAdapter() {
-    override def componentResized(e: ComponentEvent): Unit = {
+  override def removeNotify(): Unit = {
+    super.removeNotify()
+    if (bufferGraphics != null) {
+      bufferGraphics.dispose()
+      bufferGraphics = null
+      buffer = null
     }
-  })
-  */
+  }
 }
 
 object MeterColors {
+  val meter = new GradientValueMap()
+  meter.addRedPoint(0, 100)
+  meter.addGreenPoint(0, 100)
+  meter.addBluePoint(0, 100)
+
+  meter.addRedPoint(400, 250)
+  meter.addGreenPoint(400, 60)
+  meter.addBluePoint(400, 0)
+
+  meter.addRedPoint(600, 250)
+  meter.addGreenPoint(600, 180)
+  meter.addBluePoint(600, 30)
+
+  meter.addRedPoint(800, 200)
+  meter.addGreenPoint(800, 250)
+  meter.addBluePoint(800, 0)
+
+  meter.addRedPoint(1000, 0)
+  meter.addGreenPoint(1000, 255)
+  meter.addBluePoint(1000, 0)
+
   val redOrangeGreen = new GradientValueMap()
   redOrangeGreen.addRedPoint(0, 180)
   redOrangeGreen.addGreenPoint(0, 0)
@@ -81,4 +115,5 @@ object MeterColors {
   redOrangeGreen.addGreenPoint(1000, 255)
   redOrangeGreen.addBluePoint(1000, 0)
 
+  val meterTable = new ColorTable(meter)
 }
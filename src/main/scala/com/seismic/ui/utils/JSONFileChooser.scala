@@ -11,7 +11,7 @@ class JSONFileChooser(frame: JFrame, fileSelected: (File) => Unit) {
 
   def show(): Unit = {
     val chooser = new JFileChooser(getPreferences.lastSetListDir)
-    chooser.setFileFilter(new FileNameExtensionFilter("JSON Files", "json"))
+    chooser.setFileFilter(new FileNameExtensionFilter("Set Lists", "json", "seis"))
     if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
       fileSelected(chooser.getSelectedFile)
     }
@@ -1,8 +1,13 @@
 package com.seismic.ui.utils
 
 import java.awt._
+import java.awt.image.BufferedImage
 import javax.swing.JPanel
 
+/**
+  * A round dial with a pointer at angle. The dial face doesn't change, so it's drawn once into an image and only the
+  * pointer is drawn over it on each paint, with colors and strokes made up front so painting allocates nothing.
+  */
 class MeterCircleIndicator(size: Dimension) extends JPanel {
   setPreferredSize(size)
 
@@ -11,12 +16,21 @@ class MeterCircleIndicator(size: Dimension) extends JPanel {
   val centerX = size.getWidth / 2f
   val centerY = size.getHeight / 2f
 
+  private val needleColor = new Color(90, 90, 90)
+  private val needleStroke = new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL)
+  private var face: BufferedImage = _
+
   def setAngle(angle: Float): Unit = {
     this.angle = angle
   }
 
+  override def setBackground(color: Color): Unit = {
+    super.setBackground(color)
+    face = null
+  }
+
   override def paint(graphics: Graphics): Unit = {
-    super.paint(graphics)
+    if (getWidth <= 0 || getHeight <= 0) return
 
     val g2d = graphics.asInstanceOf[Graphics2D]
 
@@ -30,17 +44,29 @@ class MeterCircleIndicator(size: Dimension) extends JPanel {
     val endX = centerX + Math.cos(opposite) * length
     val endY = centerY + Math.sin(opposite) * length
 
-    g2d.setColor(getBackground)
-    g2d.fillRect(0, 0, getWidth, getHeight)
+    g2d.drawImage(faceImage, 0, 0, null)
 
-    g2d.setColor(Color.BLACK)
-    g2d.fillOval(0, 0, getWidth, getHeight)
-
-    g2d.setColor(new Color(90, 90, 90))
-    g2d.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL))
+    g2d.setColor(needleColor)
+    g2d.setStroke(needleStroke)
     g2d.drawLine(startX.toInt, startY.toInt, centerX.toInt, centerY.toInt)
     g2d.drawLine(centerX.toInt, centerY.toInt, endX.toInt, endY.toInt)
     g2d.setColor(SwingComponents.orangeColor)
     g2d.drawLine(startX.toInt, startY.toInt, pointerX.toInt, pointerY.toInt)
   }
+
+  private def faceImage = {
+    if (face == null || face.getWidth != getWidth || face.getHeight != getHeight) {
+      face = new BufferedImage(getWidth, getHeight, BufferedImage.TYPE_INT_ARGB)
+      val g2d = face.createGraphics()
+      try {
+        g2d.setColor(getBackground)
+        g2d.fillRect(0, 0, getWidth, getHeight)
+        g2d.setColor(Color.BLACK)
+        g2d.fillOval(0, 0, getWidth, getHeight)
+      } finally {
+        g2d.dispose()
+      }
+    }
+    face
+  }
 }
@@ -0,0 +1,59 @@
+package com.seismic
+
+import com.seismic.test.Test
+
+class CompiledNotesTest extends Test {
+
+  "Compiling notes" - {
+    "should send plain notes on when triggered and off when released" in {
+      val notes = CompiledNotes.compile(Array("C#3"))
+
+      notes.onCommands should be (Array(CompiledNotes.NoteOn))
+      notes.onPitches should be (Array(61))
+      notes.offPitches should be (Array(61))
+    }
+
+    "should send N notes off when triggered and nothing when released" in {
+      val notes = CompiledNotes.compile(Array("NC#3"))
+
+      notes.onCommands should be (Array(CompiledNotes.NoteOff))
+      notes.offCount should be (0)
+    }
+
+    "should send T notes only when released" in {
+      val notes = CompiledNotes.compile(Array("TC#3"))
+
+      notes.onCount should be (0)
+      notes.offPitches should be (Array(61))
+    }
+
+    "should send X notes only when triggered" in {
+      val notes = CompiledNotes.compile(Array("XC#3"))
+
+      notes.onCommands should be (Array(CompiledNotes.NoteOn))
+      notes.offCount should be (0)
+    }
+
+    "should resolve the channel suffix and leave the rest on the song channel" in {
+      val notes = CompiledNotes.compile(Array("C#3/4", "6"))
+
+      notes.onChannels should be (Array(3, CompiledNotes.SongChannel))
+      notes.onPitches should be (Array(61, 6))
+    }
+
+    "should skip notes that can't be parsed" in {
+      val notes = CompiledNotes.compile(Array("C#3/x", "G8"))
+
+      notes.onPitches should be (Array(127))
+    }
+  }
+
+  "An instrument" - {
+    "should recompile when its notes are replaced" in {
+      val instrument = Instrument(Array("C#3"))
+      instrument.notes = Array("G8")
+
+      instrument.compiled.onPitches should be (Array(127))
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.seismic
+
+import com.seismic.test.Test
+
+class HandleTableTest extends Test {
+
+  "with even zones" - {
+    "should pick the same instruments as the calibration" in new TestData {
+      for (count <- 1 to 5;
+           (min, max) <- Seq((0, 1023), (800, 900), (500, 500));
+           inverted <- Seq(true, false)) {
+        val calibration = HandleCalibration(min, max, inverted)
+        val instruments = instrumentsFor(count)
+        val table = HandleTable(instruments, calibration, null)
+
+        (-100 to 1100).foreach { value =>
+          instruments(table.indexFor(value, -1)) should be theSameInstanceAs calibration.select(value, instruments)
+        }
+      }
+    }
+  }
+
+  "with zone weights" - {
+    "should give each instrument its share of the handle" in new TestData {
+      val table = HandleTable(instrumentsFor(3), HandleCalibration(0, 1000, inverted = false), Array(1, 2, 1))
+
+      table.indexFor(200, -1) should be (0)
+      table.indexFor(300, -1) should be (1)
+      table.indexFor(700, -1) should be (1)
+      table.indexFor(800, -1) should be (2)
+      table.indexFor(1000, -1) should be (2)
+    }
+
+    "should never pick an instrument without a zone" in new TestData {
+      val table = HandleTable(instrumentsFor(3), HandleCalibration(0, 1000, inverted = false), Array(1, 1, 0))
+
+      table.indexFor(0, -1) should be (0)
+      table.indexFor(1000, -1) should be (1)
+      table.indexFor(2000, -1) should be (1)
+    }
+
+    "should ignore weights that don't fit the instruments" in new TestData {
+      val calibration = HandleCalibration(0, 1000, inverted = false)
+      val table = HandleTable(instrumentsFor(3), calibration, Array(1, 2))
+
+      table.indexFor(300, -1) should be (HandleTable(instrumentsFor(3), calibration, null).indexFor(300, -1))
+    }
+  }
+
+  "with hysteresis" - {
+    "should keep the last instrument until the handle is past the edge of its zone" in new TestData {
+      // without hysteresis 0 to 511 picks the first, 512 to 1023 the second
+      val table = HandleTable(instrumentsFor(2), HandleCalibration(0, 1023, inverted = false, hysteresis = 20), null)
+
+      table.indexFor(531, 0) should be (0)
+      table.indexFor(532, 0) should be (1)
+      table.indexFor(492, 1) should be (1)
+      table.indexFor(491, 1) should be (0)
+      table.indexFor(500, -1) should be (0)
+    }
+  }
+
+  "an instrument bank" - {
+    "should pick again when the calibration changes" in new TestData {
+      bank.selectInstrumentForValue(100) should be theSameInstanceAs bank.getInstruments(1)
+      calibration.inverted = false
+      bank.selectInstrumentForValue(100) should be theSameInstanceAs bank.getInstruments(0)
+    }
+
+    "should pick again when its instruments change" in new TestData {
+      bank.selectInstrumentForValue(800) should be theSameInstanceAs bank.getInstruments(0)
+      bank.setInstruments(instrumentsFor(1))
+      bank.selectInstrumentForValue(100) should be theSameInstanceAs bank.getInstruments(0)
+    }
+
+    "should pick again when its zone weights change" in new TestData {
+      calibration.inverted = false
+      bank.selectInstrumentForValue(400) should be theSameInstanceAs bank.getInstruments(0)
+      bank.setZoneWeights(Array(1, 3))
+      bank.selectInstrumentForValue(400) should be theSameInstanceAs bank.getInstruments(1)
+    }
+  }
+
+  trait TestData {
+    val calibration = HandleCalibration(0, 1023)
+    val bank = InstrumentBank("KICK")
+    bank.setInstruments(instrumentsFor(2))
+    bank.setHandleCalibration(calibration)
+
+    def instrumentsFor(count: Int) = Array.tabulate(count) { i => Instrument(Array(s"C$i")) }
+  }
+}
@@ -3,7 +3,7 @@ package com.seismic
 import java.io.{File, StringWriter}
 
 import com.seismic.io.{ObjectMapperFactory, Preferences}
-import com.seismic.messages.TriggerOnMessage
+import com.seismic.messages.{TriggerOnMessage, Triggers}
 import com.seismic.midi.MIDIIO
 import com.seismic.test.Test
 import org.mockito.Mockito._
@@ -36,22 +36,22 @@ class SeismicTest extends Test {
   "When triggering notes" - {
     "should trigger a midi note for the first kick instrument" in new SongData {
       seismic.trigger(TriggerOnMessage("KICK", 1023, 0, false))
-      verify(midiIO).sendNoteOn(0, 61, 127)
+      verify(midiIO).sendNoteOn(0, 61, 127, 0L)
     }
 
     "should trigger a midi note for the second kick instrument" in new SongData {
       seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-      verify(midiIO).sendNoteOn(0, 5, 127)
+      verify(midiIO).sendNoteOn(0, 5, 127, 0L)
     }
 
     "should trigger a midi note for the first snare instrument" in new SongData {
       seismic.trigger(TriggerOnMessage("SNARE", 1023, 0, false))
-      verify(midiIO).sendNoteOn(0, 1, 127)
+      verify(midiIO).sendNoteOn(0, 1, 127, 0L)
     }
 
     "should trigger a midi note for the second snare instrument" in new SongData {
       seismic.trigger(TriggerOnMessage("SNARE", 1023, 1023, false))
-      verify(midiIO).sendNoteOn(0, 127, 127)
+      verify(midiIO).sendNoteOn(0, 127, 127, 0L)
     }
 
     "for notes prefixed with N" - {
@@ -60,7 +60,7 @@ class SeismicTest extends Test {
         instrument.setNotes(Array("NC#3"))
 
         seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-        verify(midiIO).sendNoteOff(0, 61, 0)
+        verify(midiIO).sendNoteOff(0, 61, 0, 0L)
       }
 
       "it should NOT trigger a midi note off when off() is called" in new SongData {
@@ -69,7 +69,7 @@ class SeismicTest extends Test {
         triggeredState.triggered("KICK", instrument, song)
 
         seismic.off("KICK")
-        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt())
+        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt(), anyLong())
       }
     }
 
@@ -79,7 +79,7 @@ class SeismicTest extends Test {
         instrument.setNotes(Array("TC#3"))
 
         seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-        verify(midiIO, never()).sendNoteOn(anyInt(), anyInt(), anyInt())
+        verify(midiIO, never()).sendNoteOn(anyInt(), anyInt(), anyInt(), anyLong())
       }
 
       "it should NOT trigger a midi note off when trigger() is called" in new SongData {
@@ -87,7 +87,7 @@ class SeismicTest extends Test {
         instrument.setNotes(Array("TC#3"))
 
         seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt())
+        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt(), anyLong())
       }
 
       "it should trigger a midi note off when off() is called" in new SongData {
@@ -96,7 +96,7 @@ class SeismicTest extends Test {
         triggeredState.triggered("KICK", instrument, song)
 
         seismic.off("KICK")
-        verify(midiIO).sendNoteOff(0, 61, 0)
+        verify(midiIO).sendNoteOff(0, 61, 0, 0L)
       }
     }
 
@@ -106,7 +106,7 @@ class SeismicTest extends Test {
         instrument.setNotes(Array("XC#3"))
 
         seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-        verify(midiIO).sendNoteOn(0, 61, 127)
+        verify(midiIO).sendNoteOn(0, 61, 127, 0L)
       }
 
       "it should NOT trigger a midi note off when off() is called" in new SongData {
@@ -115,7 +115,7 @@ class SeismicTest extends Test {
         triggeredState.triggered("KICK", instrument, song)
 
         seismic.off("KICK")
-        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt())
+        verify(midiIO, never()).sendNoteOff(anyInt(), anyInt(), anyInt(), anyLong())
       }
     }
 
@@ -125,16 +125,56 @@ class SeismicTest extends Test {
         instrument.setNotes(Array("C#3/4"))
 
         seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-        verify(midiIO).sendNoteOn(3, 61, 127)
+        verify(midiIO).sendNoteOn(3, 61, 127, 0L)
       }
     }
 
+    "for instruments with several notes" - {
+      "it should send them as one batch" in new SongData {
+        val instrument = phrase.getInstrumentBankNamed("KICK").addNewInstrument()
+        instrument.setNotes(Array("C#3", "NF-2", "G8/4"))
+
+        seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
+        verify(midiIO).sendNotes(instrument.compiled.onCommands, instrument.compiled.onChannels,
+                                 instrument.compiled.onPitches, 3, 0, 127, 0L)
+        verify(midiIO, never()).sendNoteOn(anyInt(), anyInt(), anyInt(), anyLong())
+      }
+
+      "it should send the note offs as one batch when off() is called" in new SongData {
+        val instrument = phrase.getInstrumentBankNamed("KICK").addNewInstrument()
+        instrument.setNotes(Array("C#3", "TF-2", "XG8"))
+        triggeredState.triggered("KICK", instrument, song)
+
+        seismic.off("KICK")
+        verify(midiIO).sendNotes(instrument.compiled.offCommands, instrument.compiled.offChannels,
+                                 instrument.compiled.offPitches, 2, 0, 0, 0L)
+      }
+    }
+
+    "it should send the notes with the time their hit arrived" in new SongData {
+      val kick = Triggers.idFor("KICK")
+      seismic.trigger(kick, false, 1023, 0, 12345L)
+      verify(midiIO).sendNoteOn(0, 61, 127, 12345L)
+
+      seismic.off(kick, 23456L)
+      verify(midiIO).sendNoteOff(0, 61, 0, 23456L)
+    }
+
+    "it should say when it queued a hit's notes, and 0 when there were none" in new SongData {
+      val kick = Triggers.idFor("KICK")
+      val before = System.nanoTime()
+
+      seismic.trigger(kick, false, 1023, 0, 0L) should be >= before
+      seismic.off(kick, 0L) should be >= before
+      seismic.off(Triggers.idFor("SNARE"), 0L) should be (0L)
+    }
+
     "it should send numeric midi values" in new SongData {
       val instrument = phrase.getInstrumentBankNamed("KICK").addNewInstrument()
       instrument.setNotes(Array("6"))
 
       seismic.trigger(TriggerOnMessage("KICK", 1023, 1023, false))
-      verify(midiIO).sendNoteOn(0, 6, 127)
+      verify(midiIO).sendNoteOn(0, 6, 127, 0L)
     }
 
     "when an error occurs" in new SongData {
@@ -168,15 +208,120 @@ class SeismicTest extends Test {
     }
   }
 
+  "when navigating phrases" - {
+    "should move from the last phrase of a song to the first phrase of the next" in new SongData {
+      val nextSong = setList.addSong()
+
+      seismic.selectNextPhrase()
+
+      seismic.currentSongOpt.get should be theSameInstanceAs nextSong
+      seismic.currentPhraseOpt.get should be theSameInstanceAs nextSong.getPhrases.head
+    }
+
+    "should move from the first phrase of a song to the last phrase of the previous" in new SongData {
+      val secondPhrase = song.addPhrase()
+      val nextSong = setList.addSong()
+      seismic.setCurrentSong(nextSong)
+
+      seismic.selectPreviousPhrase()
+
+      seismic.currentSongOpt.get should be theSameInstanceAs song
+      seismic.currentPhraseOpt.get should be theSameInstanceAs secondPhrase
+    }
+
+    "should wrap round from the last phrase in the set list to the first" in new SongData {
+      val nextSong = setList.addSong()
+      seismic.setCurrentSong(nextSong)
+
+      seismic.selectNextPhrase()
+
+      seismic.currentSongOpt.get should be theSameInstanceAs song
+      seismic.currentPhraseOpt.get should be theSameInstanceAs phrase
+    }
+
+    "should follow phrases reordered in the song" in new SongData {
+      val secondPhrase = song.addPhrase()
+      song.updatePhrases(Seq(secondPhrase, phrase))
+
+      seismic.selectNextPhrase()
+
+      seismic.currentPhraseOpt.get should be theSameInstanceAs secondPhrase
+    }
+
+    "should switch to a phrase by its patch" in new SongData {
+      val secondPhrase = song.addPhrase()
+
+      seismic.patch(secondPhrase.patch)
+
+      seismic.currentPhraseOpt.get should be theSameInstanceAs secondPhrase
+    }
+
+    "should switch to a phrase by a patch it was given after the set list was opened" in new SongData {
+      phrase.setPatch(42)
+      seismic.setCurrentPhrase(song.addPhrase())
+
+      seismic.patch(42)
+
+      seismic.currentPhraseOpt.get should be theSameInstanceAs phrase
+    }
+
+    "should stay on the current phrase for a patch no phrase has" in new SongData {
+      song.addPhrase()
+
+      seismic.patch(99)
+      seismic.patch(-1)
+
+      seismic.currentPhraseOpt.get should be theSameInstanceAs phrase
+    }
+  }
+
+  "when changing the current song" - {
+    "hits should play the new song's phrase" in new SongData with SecondSongData {
+      val changedTo = recordPhraseChanges()
+
+      seismic.setCurrentSong(secondSong)
+      seismic.trigger(TriggerOnMessage("KICK", 1023, 0, false))
+
+      verify(midiIO).sendNoteOn(1, 62, 127, 0L)
+      verify(midiIO, never()).sendNoteOn(0, 61, 127, 0L)
+      changedTo should be (Seq(secondPhrase))
+    }
+  }
+
+  "when another change is published first" - {
+    "the update should start again from it" in new SongData with SecondSongData {
+      val changedTo = recordPhraseChanges()
+      var calls = 0
+
+      val published = seismic.update { state =>
+        calls += 1
+        if (calls == 1) {
+          // another thread gets in between reading the state and publishing the next one
+          seismic.setCurrentSong(secondSong)
+        }
+        state.withPhrase(state.song.getPhrases.last)
+      }
+
+      calls should be (2)
+      published.song should be theSameInstanceAs secondSong
+      published.phrase should be theSameInstanceAs secondPhrase2
+      seismic.state should be theSameInstanceAs published
+      changedTo should be (Seq(secondPhrase))
+
+      seismic.trigger(TriggerOnMessage("KICK", 1023, 0, false))
+      verify(midiIO).sendNoteOn(1, 64, 127, 0L)
+    }
+  }
+
   "when calibrating the handle, triggered midi notes" - {
     "should fire the first instrument when low" in new SongData {
       seismic.trigger(TriggerOnMessage("KICK", 800, 0, false))
-      verify(midiIO).sendNoteOn(0, 61, 112)
+      verify(midiIO).sendNoteOn(0, 61, 112, 0L)
     }
 
     "should fire the second instrument when high" in new SongData {
       seismic.trigger(TriggerOnMessage("KICK", 800, 800, false))
-      verify(midiIO).sendNoteOn(0, 5, 112)
+      verify(midiIO).sendNoteOn(0, 5, 112, 0L)
     }
 
     "should reflect updated calibration" in new SongData {
@@ -184,7 +329,25 @@ class SeismicTest extends Test {
       preferences.handleCalibration.calibrationMaxValue = 110
 
       seismic.trigger(TriggerOnMessage("KICK", 800, 110, false))
-      verify(midiIO).sendNoteOn(0, 5, 112)
+      verify(midiIO).sendNoteOn(0, 5, 112, 0L)
+    }
+  }
+
+  trait SecondSongData { this: SongData =>
+    val secondPhrase = Phrase("Second Phrase", 2)
+    secondPhrase.getInstrumentBankNamed("KICK").setInstruments(Array(Instrument(Array("D3"))))
+    val secondPhrase2 = Phrase("Second Phrase 2", 3)
+    secondPhrase2.getInstrumentBankNamed("KICK").setInstruments(Array(Instrument(Array("E3"))))
+
+    val secondSong = Song("Second Song", 2)
+    secondSong.setPhrases(Array(secondPhrase, secondPhrase2))
+    setList.songs = Array(song, secondSong)
+    secondSong.setList = setList
+
+    def recordPhraseChanges() = {
+      val changedTo = scala.collection.mutable.ArrayBuffer[Phrase]()
+      seismic.onPhraseChange { phrase => changedTo += phrase }
+      changedTo
     }
   }
 
@@ -213,6 +376,7 @@ class SeismicTest extends Test {
 
     val setList = SetList("Test SetList")
     setList.songs = Array(song)
+    song.setList = setList
 
     seismic.setSetList(setList)
 
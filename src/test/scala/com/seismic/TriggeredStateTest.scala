@@ -0,0 +1,57 @@
+package com.seismic
+
+import com.seismic.messages.Triggers
+import com.seismic.test.Test
+
+class TriggeredStateTest extends Test {
+
+  "The triggered state" - {
+    "should remember the last instrument and song for a trigger" in new StateData {
+      triggeredState.triggered("KICK", instrument1, song)
+      triggeredState.triggered("KICK", instrument2, song)
+
+      triggeredState.lastTriggered("KICK") should be (Some((instrument2, song)))
+    }
+
+    "should keep each trigger separate" in new StateData {
+      triggeredState.triggered("KICK", instrument1, song)
+      triggeredState.triggered("SNARE", instrument2, song)
+
+      triggeredState.lastTriggered(Triggers.idFor("KICK"), last) should be (true)
+      last.instrument should be (instrument1)
+      triggeredState.lastTriggered(Triggers.idFor("SNARE"), last) should be (true)
+      last.instrument should be (instrument2)
+    }
+
+    "should have nothing for a trigger that hasn't played" in new StateData {
+      triggeredState.lastTriggered("TOM3") should be (None)
+    }
+
+    "should track more than the kick and snare" in new StateData {
+      try {
+        val pads = (1 to 16).map { i => s"PAD$i" }
+        pads.foreach { pad => Triggers.register(pad) }
+        pads.foreach { pad => triggeredState.triggered(pad, instrument1, song) }
+
+        pads.foreach { pad => triggeredState.lastTriggered(pad) should be (Some((instrument1, song))) }
+      } finally {
+        Triggers.reset()
+      }
+    }
+
+    "should ignore ids it can't track" in new StateData {
+      triggeredState.triggered(Triggers.Unknown, instrument1, song)
+
+      triggeredState.lastTriggered(Triggers.Unknown, last) should be (false)
+      triggeredState.lastTriggered(Triggers.MaxTriggers, last) should be (false)
+    }
+  }
+
+  trait StateData {
+    val triggeredState = new TriggeredState
+    val last = new TriggeredState.Last
+    val instrument1 = Instrument(Array("C1"))
+    val instrument2 = Instrument(Array("D1"))
+    val song = Song("Test Song", 1)
+  }
+}
@@ -0,0 +1,114 @@
+package com.seismic
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, StringWriter}
+
+import com.seismic.io.{ObjectMapperFactory, SetListSnapshot}
+import com.seismic.test.Test
+import com.seismic.utils.ValueMapHelper.map
+
+class VelocityCurveTest extends Test {
+
+  "A linear velocity curve" - {
+    "should give the same velocities as mapping against the threshold" in {
+      for (threshold <- Seq(900, 500, 1023); value <- 0 until VelocityCurve.TableSize) {
+        val expected = Math.max(Math.min(map(value, 0, threshold, 0, 127), 127), 0).toInt
+        VelocityCurve.linear.velocityFor(value, threshold) should be (expected)
+        new VelocityTable(VelocityCurve.linear, threshold).velocityFor(value) should be (expected)
+      }
+    }
+  }
+
+  "A velocity curve" - {
+    "should run from silent to full velocity at the threshold" in {
+      Seq(VelocityCurve("log"), VelocityCurve("exp"), VelocityCurve("s-curve")).foreach { curve =>
+        curve.velocityFor(0, 800) should be (0)
+        curve.velocityFor(800, 800) should be (127)
+        curve.velocityFor(1023, 800) should be (127)
+      }
+    }
+
+    "should be louder than linear halfway when log and quieter when exp" in {
+      VelocityCurve("log").velocityFor(400, 800) should be > 63
+      VelocityCurve("exp").velocityFor(400, 800) should be < 63
+    }
+
+    "should join breakpoints with straight lines and stay flat past the ends" in {
+      val curve = VelocityCurve("breakpoints", points = Array(20, 40, 100, 120))
+      curve.velocityFor(0, 127) should be (40)
+      curve.velocityFor(60, 127) should be (80)
+      curve.velocityFor(127, 127) should be (120)
+    }
+
+    "should refuse a kind it doesn't know" in {
+      an [IllegalArgumentException] should be thrownBy VelocityCurve("wobbly")
+    }
+  }
+
+  "An instrument" - {
+    "should play a missing curve as linear" in {
+      val instrument = Instrument(Array("C1"), null)
+      instrument.mapValueToVelocity(450) should be (63)
+    }
+
+    "should follow its bank's threshold when it changes" in {
+      val thresholds = TriggerThresholds()
+      val instrument = Instrument(Array("C1"))
+      instrument.setTriggerThreshold(() => thresholds.kickThreshold)
+
+      instrument.mapValueToVelocity(450) should be (63)
+      thresholds.kickThreshold = 450
+      instrument.mapValueToVelocity(450) should be (127)
+    }
+
+    "should use a new curve as soon as it's set" in {
+      val instrument = Instrument(Array("C1"))
+      instrument.mapValueToVelocity(450) should be (63)
+      instrument.setVelocityCurve(VelocityCurve("breakpoints", points = Array(0, 100, 127, 100)))
+      instrument.mapValueToVelocity(450) should be (100)
+    }
+
+    "should keep its curve in the set list json" in {
+      val instrument = Instrument(Array("C1"), VelocityCurve("exp", 6))
+      val writer = new StringWriter()
+      ObjectMapperFactory.objectMapper.writeValue(writer, instrument)
+      val read = ObjectMapperFactory.objectMapper.readValue(writer.toString, classOf[Instrument])
+
+      read.velocityCurve.kind should be ("exp")
+      read.velocityCurve.shape should be (6)
+    }
+
+    "should fill in a curve's missing fields from the set list json and still save" in {
+      val kindOnly = readCurve("{ \"kind\" : \"log\" }")
+      kindOnly.shape should be (VelocityCurve.DefaultShape)
+      kindOnly.points should be (empty)
+      kindOnly.velocityFor(400, 800) should be > 63
+
+      val kindAndShape = readCurve("{ \"kind\" : \"exp\", \"shape\" : 4 }")
+      kindAndShape.shape should be (4)
+      kindAndShape.points should be (empty)
+
+      val noShape = readCurve("{ \"kind\" : \"s-curve\", \"shape\" : 0 }")
+      noShape.velocityFor(800, 800) should be (127)
+
+      Seq(kindOnly, kindAndShape, noShape).foreach { curve =>
+        val phrase = Phrase("Curves", 1)
+        phrase.getInstrumentBankNamed("KICK").setInstruments(Array(Instrument(Array("C1"), curve)))
+        val song = Song("Curves", 1)
+        song.setPhrases(Array(phrase))
+        val setList = SetList("Curves")
+        setList.songs = Array(song)
+        song.setList = setList
+
+        val out = new ByteArrayOutputStream()
+        SetListSnapshot.write(setList, out)
+        val read = SetListSnapshot.read(new ByteArrayInputStream(out.toByteArray))
+
+        val saved = read.songs.head.getPhrases.head.getInstrumentBankNamed("KICK").getInstruments.head.velocityCurve
+        saved.kind should be (curve.kind)
+        saved.shape should be (curve.shape)
+      }
+    }
+  }
+
+  def readCurve(json: String) = ObjectMapperFactory.objectMapper.readValue(json, classOf[VelocityCurve])
+}
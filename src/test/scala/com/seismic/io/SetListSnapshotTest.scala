@@ -0,0 +1,98 @@
+package com.seismic.io
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, File, IOException}
+
+import com.seismic.{SetList, VelocityCurve}
+import com.seismic.test.Test
+
+class SetListSnapshotTest extends Test {
+
+  "A set list snapshot" - {
+    "should read back the same set list as the JSON it was made from" in new SnapshotData {
+      val copy = roundTrip(setList)
+
+      copy.name should be (setList.name)
+      copy.songs.length should be (setList.songs.length)
+      copy.songs.zip(setList.songs).foreach { case (copySong, song) =>
+        copySong.name should be (song.name)
+        copySong.channel should be (song.channel)
+        copySong.getPhrases.length should be (song.getPhrases.length)
+        copySong.getPhrases.zip(song.getPhrases).foreach { case (copyPhrase, phrase) =>
+          copyPhrase.name should be (phrase.name)
+          copyPhrase.patch should be (phrase.patch)
+          copyPhrase.getInstrumentBanks.map { bank => bank.name } should be (phrase.getInstrumentBanks.map { bank => bank.name })
+          copyPhrase.getInstrumentBanks.zip(phrase.getInstrumentBanks).foreach { case (copyBank, bank) =>
+            copyBank.getInstruments.map { instrument => instrument.notes.toSeq } should
+              be (bank.getInstruments.map { instrument => instrument.notes.toSeq })
+          }
+        }
+      }
+    }
+
+    "should link everything back to what holds it" in new SnapshotData {
+      val copy = roundTrip(setList)
+
+      val song = copy.songs(0)
+      song.setList should be theSameInstanceAs copy
+      val phrase = song.getPhrases(0)
+      phrase.song should be theSameInstanceAs song
+      phrase.getInstrumentBankNamed("KICK").phrase should be theSameInstanceAs phrase
+    }
+
+    "should select the same instruments as the JSON" in new SnapshotData {
+      val copy = roundTrip(setList)
+
+      copy.songs(0).getPhrases(0).instrumentFor(0, 0).notes should be (setList.songs(0).getPhrases(0).instrumentFor(0, 0).notes)
+    }
+
+    "should keep each instrument's velocity curve" in new SnapshotData {
+      val bank = setList.songs(0).getPhrases(0).getInstrumentBankNamed("KICK")
+      bank.getInstruments(0).setVelocityCurve(VelocityCurve("breakpoints", points = Array(0, 20, 127, 100)))
+
+      val copy = roundTrip(setList).songs(0).getPhrases(0).getInstrumentBankNamed("KICK").getInstruments
+      copy(0).velocityCurve.kind should be ("breakpoints")
+      copy(0).velocityCurve.points should be (Array(0, 20, 127, 100))
+      copy(1).velocityCurve should be theSameInstanceAs VelocityCurve.linear
+    }
+
+    "should keep each bank's zone weights" in new SnapshotData {
+      setList.songs(0).getPhrases(0).getInstrumentBankNamed("KICK").setZoneWeights(Array(3, 1))
+
+      val copy = roundTrip(setList).songs(0).getPhrases(0)
+      copy.getInstrumentBankNamed("KICK").getZoneWeights should be (Array(3, 1))
+      copy.getInstrumentBankNamed("SNARE").getZoneWeights should be (null)
+    }
+
+    "should be saved back as a snapshot when opened from one" in new SnapshotData {
+      val file = File.createTempFile("saved", SetListSnapshot.Extension)
+      file.deleteOnExit()
+      setList.file = file
+      setList.setName("Saved Back")
+
+      SetListSerializer.fileFor(setList) should be (file)
+      SetListSerializer.write(setList)
+      SetListSerializer.flush()
+
+      SetListSnapshot.read(file).name should be ("Saved Back")
+    }
+
+    "should refuse a file that isn't a snapshot" in {
+      an [IOException] should be thrownBy SetListSnapshot.read(new ByteArrayInputStream("{}   ".getBytes))
+    }
+  }
+
+  trait SnapshotData {
+    val preferences = Preferences(".")
+    val setList = ObjectMapperFactory.objectMapper.readValue(new File("src/test/resources/New Set List Test.json"),
+                                                              classOf[SetList])
+    setList.setPreferences(preferences)
+
+    def roundTrip(setList: SetList) = {
+      val out = new ByteArrayOutputStream()
+      SetListSnapshot.write(setList, out)
+      val copy = SetListSnapshot.read(new ByteArrayInputStream(out.toByteArray))
+      copy.setPreferences(preferences)
+      copy
+    }
+  }
+}
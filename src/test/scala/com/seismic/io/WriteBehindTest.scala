@@ -0,0 +1,126 @@
+package com.seismic.io
+
+import java.io.File
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Files
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+import com.seismic.test.Test
+
+class WriteBehindTest extends Test {
+
+  "A write-behind" - {
+    "should write only the latest of several saves" in new WriteData {
+      writeBehind.save("one")
+      writeBehind.save("two")
+      writeBehind.save("three")
+      writeBehind.flush()
+
+      contents should be ("three")
+      serialized should be (1)
+    }
+
+    "should write nothing if nothing was saved" in new WriteData {
+      writeBehind.flush()
+
+      file.exists() should be (false)
+      serialized should be (0)
+    }
+
+    "should leave no temporary file behind" in new WriteData {
+      writeBehind.save("one")
+      writeBehind.flush()
+
+      dir.listFiles().map { f => f.getName } should be (Array("saved.txt"))
+    }
+
+    "should serialize again if saved while serializing" in new WriteData {
+      override def serialize(value: String) = {
+        if (serialized == 1) writeBehind.save("newer")
+        value.getBytes(UTF_8)
+      }
+
+      writeBehind.save("older")
+      writeBehind.flush()
+
+      contents should be ("newer")
+      serialized should be (2)
+    }
+
+    "should write what was saved, not what it was changed to afterwards" in new WriteData {
+      val builder = new StringBuilder("saved")
+      val builders = new WriteBehind[StringBuilder, String]("test", 60000, (value) => file, (value) => value.toString,
+                                                            (file, value) => value.getBytes(UTF_8))
+      builders.save(builder)
+      builder.append(" and changed")
+      builders.flush()
+
+      contents should be ("saved")
+    }
+
+    "should snapshot coalesced saves once, on the owner, when the delay is up" in new WriteData {
+      val owners = new LinkedBlockingQueue[() => Unit]
+      var snapshots = 0
+      val coalesced = new WriteBehind[StringBuilder, String]("test", 10, (value) => file, (value) => {
+        snapshots += 1
+        value.toString
+      }, (file, value) => value.getBytes(UTF_8))
+      val builder = new StringBuilder("one")
+
+      coalesced.saveCoalesced(builder, (f) => owners.put(f))
+      builder.append(" two")
+      coalesced.saveCoalesced(builder, (f) => owners.put(f))
+      snapshots should be (0)
+
+      val snapshot = owners.poll(10, TimeUnit.SECONDS)
+      builder.append(" three")
+      snapshot()
+      coalesced.flush()
+
+      snapshots should be (1)
+      owners.isEmpty should be (true)
+      contents should be ("one two three")
+    }
+
+    "should snapshot coalesced saves that are still waiting on flush" in new WriteData {
+      writeBehind.saveCoalesced("one", (f) => ())
+      writeBehind.saveCoalesced("two", (f) => ())
+      writeBehind.flush()
+
+      contents should be ("two")
+      serialized should be (1)
+    }
+
+    "should keep each file's latest save" in new WriteData {
+      val other = new File(dir, "other.txt")
+      other.deleteOnExit()
+      override def fileFor(value: String) = if (value.startsWith("other")) other else file
+
+      writeBehind.save("one")
+      writeBehind.save("other one")
+      writeBehind.flush()
+
+      contents should be ("one")
+      new String(Files.readAllBytes(other.toPath), UTF_8) should be ("other one")
+    }
+  }
+
+  trait WriteData {
+    val dir = Files.createTempDirectory("write-behind").toFile
+    dir.deleteOnExit()
+    val file = new File(dir, "saved.txt")
+    file.deleteOnExit()
+    var serialized = 0
+
+    def serialize(value: String) = value.getBytes(UTF_8)
+
+    val writeBehind = new WriteBehind[String, String]("test", 60000, (value) => fileFor(value), (value) => value, (file, value) => {
+      serialized += 1
+      serialize(value)
+    })
+
+    def fileFor(value: String) = file
+
+    def contents = new String(Files.readAllBytes(file.toPath), UTF_8)
+  }
+}
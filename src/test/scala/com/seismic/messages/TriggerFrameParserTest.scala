@@ -0,0 +1,97 @@
+package com.seismic.messages
+
+import com.seismic.test.Test
+
+class TriggerFrameParserTest extends Test {
+
+  "Parsing a trigger on frame" - {
+    "should fill in the trigger values" in new ParserData {
+      parse("T,ON,KICK,203,152,0\r\n") should be (true)
+
+      event.kind should be (TriggerEvent.TriggerOn)
+      event.triggerId should be (Triggers.idFor("KICK"))
+      event.triggerValue should be (203)
+      event.handleValue should be (152)
+      event.fingerTrigger should be (false)
+    }
+
+    "should read the finger trigger" in new ParserData {
+      parse("T,ON,SNARE,1023,0,1")
+
+      event.triggerId should be (Triggers.idFor("SNARE"))
+      event.fingerTrigger should be (true)
+    }
+
+    "should treat a missing finger value as off" in new ParserData {
+      parse("T,ON,KICK,203,152") should be (true)
+      event.fingerTrigger should be (false)
+    }
+
+    "should read registered trigger names" in new ParserData {
+      try {
+        Triggers.register("TOM")
+        parse("T,ON,TOM,10,20,0") should be (true)
+
+        Triggers.nameFor(event.triggerId) should be ("TOM")
+        parse("T,OFF,TOM") should be (true)
+        Triggers.nameFor(event.triggerId) should be ("TOM")
+      } finally {
+        Triggers.reset()
+      }
+    }
+
+    "should reject trigger names that aren't registered, without registering them" in new ParserData {
+      val registered = Triggers.registered
+
+      parse("T,ON,TOM,10,20,0") should be (false)
+      parse("T,OFF,TOM") should be (false)
+
+      Triggers.registered should be (registered)
+      Triggers.idFor("TOM") should be (Triggers.Unknown)
+    }
+
+    "should reject bad numbers" in new ParserData {
+      parse("T,ON,KICK,2x3,152,0") should be (false)
+      event.kind should be (TriggerEvent.Invalid)
+    }
+  }
+
+  "Parsing other frames" - {
+    "should read trigger off" in new ParserData {
+      parse("T,OFF,KICK")
+      event.kind should be (TriggerEvent.TriggerOff)
+    }
+
+    "should read patch" in new ParserData {
+      parse("PATCH,7\n")
+      event.kind should be (TriggerEvent.Patch)
+      event.patch should be (7)
+    }
+
+    "should read phrase navigation" in new ParserData {
+      parse("PHRASE,NEXT")
+      event.kind should be (TriggerEvent.NextPhrase)
+      parse("PHRASE,PREV")
+      event.kind should be (TriggerEvent.PreviousPhrase)
+    }
+
+    "should reject unknown messages" in new ParserData {
+      parse("HELLO,THERE") should be (false)
+      parse("") should be (false)
+    }
+  }
+
+  "A parsed event should convert to the same message as the string parser" in new ParserData {
+    parse("T,ON,KICK,203,152,0")
+    event.toMessage should be (TriggerMessageParser.from("T,ON,KICK,203,152,0"))
+  }
+
+  trait ParserData {
+    val event = new TriggerEvent
+
+    def parse(frame: String) = {
+      val bytes = ("garbage" + frame).getBytes("US-ASCII")
+      TriggerFrameParser.parse(bytes, 7, bytes.length - 7, event)
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.seismic.metrics
+
+import com.seismic.test.Test
+
+class LatencyHistogramTest extends Test {
+
+  "A latency histogram" - {
+    "should report exact values below 128ns" in new HistogramData {
+      (1 to 100).foreach { value => histogram.record(value) }
+
+      histogram.count should be (100)
+      histogram.valueAtPercentile(50) should be (50)
+      histogram.valueAtPercentile(99) should be (99)
+      histogram.maxValue should be (100)
+    }
+
+    "should stay within a couple of percent for larger values" in new HistogramData {
+      (1 to 1000).foreach { value => histogram.record(value * 1000L) }
+
+      histogram.valueAtPercentile(50).toDouble should be (500000d +- 10000d)
+      histogram.valueAtPercentile(99.9).toDouble should be (999000d +- 20000d)
+      histogram.valueAtPercentile(100) should be (1000000L)
+    }
+
+    "should report zero when empty" in new HistogramData {
+      histogram.valueAtPercentile(99) should be (0)
+    }
+
+    "should report only what was recorded since a snapshot" in new HistogramData {
+      (1 to 100).foreach { value => histogram.record(value) }
+      val earlier = histogram.snapshot
+      histogram.record(120)
+      histogram.record(120)
+
+      val difference = histogram.since(earlier)
+      difference.count should be (2)
+      difference.valueAtPercentile(50) should be (120)
+      difference.maxValue should be (120)
+      histogram.count should be (102)
+    }
+
+    "should forget everything when reset" in new HistogramData {
+      histogram.record(5000)
+      histogram.reset()
+
+      histogram.count should be (0)
+      histogram.maxValue should be (0)
+    }
+  }
+
+  trait HistogramData {
+    val histogram = new LatencyHistogram
+  }
+}
@@ -0,0 +1,100 @@
+package com.seismic.midi
+
+import java.util.concurrent.TimeUnit
+import javax.sound.midi.{MidiMessage, Receiver, ShortMessage}
+
+import com.seismic.queue.WaitStrategy
+import com.seismic.test.Test
+
+class MidiOutputLaneTest extends Test {
+
+  "A MIDI output lane" - {
+    "should hold a scheduled message until it's due" in new LaneData {
+      val due = System.nanoTime() + 5000000L
+      lane.publish(ShortMessage.NOTE_ON, 61, 127, 0L, due)
+      awaitSent(1)
+
+      receivedNanos(0) should be >= due
+      lane.jitter.count should be (1)
+      lane.lateCount should be (0)
+      lane.close()
+    }
+
+    "should count a message that was already due as late" in new LaneData {
+      lane.publish(ShortMessage.NOTE_ON, 61, 127, 0L, System.nanoTime() - 1000000L)
+      awaitSent(1)
+
+      lane.lateCount should be (1)
+      lane.close()
+    }
+
+    "should send unscheduled messages straight away without counting jitter" in new LaneData {
+      lane.publish(ShortMessage.NOTE_ON, 61, 127, 0L)
+      awaitSent(1)
+
+      lane.jitter.count should be (0)
+      lane.lateCount should be (0)
+      lane.close()
+    }
+
+    "should hand the receiver a new message for each one sent" in new LaneData {
+      lane.publish(ShortMessage.NOTE_ON, 61, 127, 1L)
+      lane.publish(ShortMessage.NOTE_ON, 62, 100, 2L)
+      awaitSent(2)
+
+      received(0) should not be theSameInstanceAs (received(1))
+      received(0).asInstanceOf[ShortMessage].getData1 should be (61)
+      received(1).asInstanceOf[ShortMessage].getData1 should be (62)
+      lane.close()
+    }
+
+    "should finish a send in flight before closing the receiver" in new LaneData {
+      override def onSend(): Unit = Thread.sleep(50)
+
+      lane.publish(ShortMessage.NOTE_ON, 61, 127, 0L)
+      val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1)
+      while (count == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(1)
+      }
+      lane.close()
+
+      closedAfterSend should be (true)
+    }
+  }
+
+  trait LaneData {
+    val received = new Array[MidiMessage](8)
+    val receivedNanos = new Array[Long](8)
+    @volatile var count = 0
+    @volatile var sending = false
+    @volatile var closedAfterSend = false
+
+    def onSend(): Unit = {}
+
+    // keeps every message it's given, as Gervill does for timestamped messages
+    val receiver = new Receiver {
+      override def send(message: MidiMessage, timestamp: Long): Unit = {
+        sending = true
+        receivedNanos(count) = System.nanoTime()
+        received(count) = message
+        count += 1
+        onSend()
+        sending = false
+      }
+
+      override def close(): Unit = {
+        closedAfterSend = !sending
+      }
+    }
+
+    val lane = new MidiOutputLane("test", receiver, 16, WaitStrategy.Yielding)
+
+    def awaitSent(messages: Int): Unit = {
+      val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1)
+      while (lane.sentCount < messages && System.nanoTime() < deadline) {
+        Thread.sleep(1)
+      }
+      lane.sentCount should be (messages)
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.seismic.serial
+
+import com.seismic.messages.{TriggerEvent, Triggers}
+import com.seismic.test.Test
+
+class BinaryFrameDecoderTest extends Test {
+
+  "A binary frame" - {
+    "should round trip a trigger on" in new FrameData {
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOn, 1, 1023, 517, BinaryFrameDecoder.FingerTriggerFlag, frame, 0)
+
+      BinaryFrameDecoder.isFrame(frame, 0) should be (true)
+      BinaryFrameDecoder.decode(frame, 0, event) should be (true)
+      event.kind should be (TriggerEvent.TriggerOn)
+      event.triggerId should be (1)
+      event.triggerValue should be (1023)
+      event.handleValue should be (517)
+      event.fingerTrigger should be (true)
+    }
+
+    "should round trip a patch" in new FrameData {
+      BinaryFrameDecoder.encode(TriggerEvent.Patch, 0, 7, 0, 0, frame, 0)
+
+      BinaryFrameDecoder.decode(frame, 0, event) should be (true)
+      event.kind should be (TriggerEvent.Patch)
+      event.patch should be (7)
+    }
+
+    "should fail the checksum when a byte is corrupted" in new FrameData {
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOn, 0, 300, 200, 0, frame, 0)
+      frame(3) = (frame(3) ^ 0x10).toByte
+
+      BinaryFrameDecoder.isFrame(frame, 0) should be (false)
+    }
+
+    "should reject an unknown type" in new FrameData {
+      BinaryFrameDecoder.encode(7, 0, 0, 0, 0, frame, 0)
+
+      BinaryFrameDecoder.decode(frame, 0, event) should be (false)
+    }
+
+    "should reject a trigger id that isn't registered" in new FrameData {
+      val badFrames = BinaryFrameDecoder.badFrames
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOn, Triggers.MaxTriggers - 1, 300, 200, 0, frame, 0)
+
+      BinaryFrameDecoder.isFrame(frame, 0) should be (true)
+      BinaryFrameDecoder.decode(frame, 0, event) should be (false)
+      BinaryFrameDecoder.badFrames should be (badFrames + 1)
+
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOff, Triggers.MaxTriggers - 1, 0, 0, 0, frame, 0)
+      BinaryFrameDecoder.decode(frame, 0, event) should be (false)
+    }
+  }
+
+  "The binary frame decoder" - {
+    "should put together frames split across reads" in new FrameData {
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOff, 1, 0, 0, 0, frame, 0)
+
+      decoder.offer(frame, 0, 4)
+      decoder.nextFrame(out) should be (false)
+      decoder.offer(frame, 4, 2)
+      decoder.nextFrame(out) should be (true)
+      out should be (frame)
+    }
+
+    "should resync after garbage and a corrupted frame" in new FrameData {
+      val bytes = new Array[Byte](BinaryFrameDecoder.FrameLength * 3 + 3)
+      bytes(0) = 0xA5.toByte
+      bytes(1) = 12
+      bytes(2) = 0xA5.toByte
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOn, 0, 100, 100, 0, bytes, 3)
+      bytes(5) = 0
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOn, 1, 800, 20, 0, bytes, 9)
+      BinaryFrameDecoder.encode(TriggerEvent.TriggerOff, 1, 0, 0, 0, bytes, 15)
+
+      decoder.offer(bytes, 0, bytes.length)
+
+      decoder.nextFrame(out) should be (true)
+      BinaryFrameDecoder.decode(out, 0, event)
+      event.triggerValue should be (800)
+      decoder.nextFrame(out) should be (true)
+      BinaryFrameDecoder.decode(out, 0, event)
+      event.kind should be (TriggerEvent.TriggerOff)
+      decoder.nextFrame(out) should be (false)
+      decoder.skippedBytes should be (9)
+    }
+  }
+
+  trait FrameData {
+    val frame = new Array[Byte](BinaryFrameDecoder.FrameLength)
+    val out = new Array[Byte](BinaryFrameDecoder.FrameLength)
+    val event = new TriggerEvent
+    val decoder = new BinaryFrameDecoder
+  }
+}
@@ -0,0 +1,106 @@
+package com.seismic.serial
+
+import java.nio.charset.StandardCharsets.US_ASCII
+
+import com.seismic.test.Test
+
+class ByteRingTest extends Test {
+
+  "A byte ring" - {
+    "should find a line once it's complete" in new RingData {
+      write("T,ON,KI")
+      ring.nextFrameLength(10) should be (0)
+
+      write("CK,1,2\n")
+      ring.nextFrameLength(10) should be (15)
+      readLine(15) should be ("T,ON,KICK,1,2\n")
+      ring.available should be (0)
+    }
+
+    "should frame several lines from one write" in new RingData {
+      write("T,OFF,KICK\nPATCH,7\n")
+
+      readLine(ring.nextFrameLength(10)) should be ("T,OFF,KICK\n")
+      readLine(ring.nextFrameLength(10)) should be ("PATCH,7\n")
+      ring.nextFrameLength(10) should be (0)
+    }
+
+    "should read lines that wrap around the end" in new RingData {
+      write("0123456789abc\n")
+      ring.skip(14)
+
+      write("PHRASE,NEXT\n")
+      ring.get(0) should be ('P'.toByte)
+      readLine(ring.nextFrameLength(10)) should be ("PHRASE,NEXT\n")
+    }
+
+    "should drop and count what doesn't fit instead of growing" in new RingData {
+      write("0123456789abcdef")
+      write("overflow")
+
+      ring.available should be (16)
+      ring.overflowedBytes should be (8)
+    }
+
+    "should throw away a full ring without a line break and start over" in new RingData {
+      write("0123456789abcdef")
+      ring.nextFrameLength(10) should be (0)
+
+      ring.resyncs should be (1)
+      ring.available should be (0)
+
+      write("junk\nPATCH,7\n")
+      readLine(ring.nextFrameLength(10)) should be ("junk\n")
+      readLine(ring.nextFrameLength(10)) should be ("PATCH,7\n")
+    }
+
+    "should not resync while a line is still arriving" in new RingData {
+      write("0123456789abcde")
+      ring.nextFrameLength(10) should be (0)
+      write("\n")
+
+      ring.nextFrameLength(10) should be (16)
+      ring.resyncs should be (0)
+    }
+
+    "should drop what was written before a clear the next time the reader looks" in new RingData {
+      write("KICK\n")
+      ring.clear()
+      ring.hasUnread should be (false)
+      ring.last should be (-1)
+
+      write("SNARE\n")
+      ring.hasUnread should be (true)
+      readLine(ring.nextFrameLength(10)) should be ("SNARE\n")
+    }
+
+    "should let the reader finish a frame it found before a clear" in new RingData {
+      write("KICK\nSNARE\n")
+      val length = ring.nextFrameLength(10)
+      ring.clear()
+
+      readLine(length) should be ("KICK\n")
+      ring.nextFrameLength(10) should be (0)
+      ring.available should be (0)
+    }
+
+    "should only take a power of two capacity" in {
+      an [IllegalArgumentException] should be thrownBy new ByteRing(10)
+    }
+  }
+
+  trait RingData {
+    val ring = new ByteRing(16)
+
+    def write(s: String) = {
+      val bytes = s.getBytes(US_ASCII)
+      ring.write(bytes, 0, bytes.length)
+    }
+
+    def readLine(length: Int) = {
+      val dest = new Array[Byte](length)
+      ring.read(dest, 0, length)
+      new String(dest, US_ASCII)
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.seismic.serial
+
+import com.seismic.test.Test
+
+class LoadProfileTest extends Test {
+
+  "A load profile" - {
+    "should keep its defaults for anything the port leaves out" in {
+      LoadProfile.forPort("load:") should be (LoadProfile())
+    }
+
+    "should read every setting from the port" in {
+      val profile = LoadProfile.forPort(
+        "load:rate=20000,triggers=4,seed=7,finger=0.25,sweep=ramp,burst=flam,seconds=30,protocol=binary")
+      profile should be (LoadProfile(20000, 4, 7, 0.25, "ramp", "flam", 30, "binary"))
+      profile.binary should be (true)
+      profile.burstSize should be (2)
+    }
+
+    "should reject a setting without a value" in {
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:rate")
+    }
+
+    "should reject more triggers than there are ids" in {
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:triggers=33")
+    }
+
+    "should take a fixed sweep only within the handle's range" in {
+      LoadProfile.forPort("load:sweep=0").sweep should be ("0")
+      LoadProfile.forPort("load:sweep=1023").sweep should be ("1023")
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:sweep=1024")
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:sweep=20000")
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:sweep=-5")
+      an [IllegalArgumentException] should be thrownBy LoadProfile.forPort("load:sweep=wobble")
+    }
+  }
+}
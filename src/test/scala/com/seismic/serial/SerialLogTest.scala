@@ -0,0 +1,57 @@
+package com.seismic.serial
+
+import java.io.File
+import java.nio.charset.StandardCharsets.US_ASCII
+
+import com.seismic.test.Test
+
+class SerialLogTest extends Test {
+
+  "A serial log" - {
+    "should read back what was recorded, in order, with its arrival times" in new LogData {
+      val writer = new SerialLogWriter(file)
+      writer.append(bytes("T,ON,KICK,1023,0,0\n"), 0, 19, 1000)
+      writer.append(bytes("T,OFF,KI"), 0, 8, 2000)
+      writer.append(bytes("CK\n"), 0, 3, 2500)
+      writer.close()
+
+      val reader = new SerialLogReader(file)
+      reader.next(dest) should be (19)
+      reader.nanos should be (1000)
+      new String(dest, 0, 19, US_ASCII) should be ("T,ON,KICK,1023,0,0\n")
+      reader.next(dest) should be (8)
+      reader.next(dest) should be (3)
+      reader.nanos should be (2500)
+      reader.next(dest) should be (-1)
+      reader.close()
+    }
+
+    "should keep recording past the end of its first window" in new LogData {
+      val writer = new SerialLogWriter(file, windowSize = 64)
+      (1 to 20).foreach { i => writer.append(bytes("PATCH,7\n"), 0, 8, i) }
+      writer.close()
+
+      val reader = new SerialLogReader(file)
+      (1 to 20).foreach { i =>
+        reader.next(dest) should be (8)
+        reader.nanos should be (i)
+      }
+      reader.next(dest) should be (-1)
+      reader.close()
+    }
+
+    "should refuse a file that isn't a recording" in new LogData {
+      java.nio.file.Files.write(file.toPath, bytes("{ \"name\": \"not a recording\" }"))
+
+      an [IllegalArgumentException] should be thrownBy new SerialLogReader(file)
+    }
+  }
+
+  trait LogData {
+    val file = File.createTempFile("seismic", ".seisrec")
+    file.deleteOnExit()
+    val dest = new Array[Byte](64)
+
+    def bytes(s: String) = s.getBytes(US_ASCII)
+  }
+}